@@ -0,0 +1,33 @@
+package frc.robot.commands;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the joystick input shaping done by the DifferentialDriveCommand on
+ * every loop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class DifferentialDriveCommandBenchmark {
+    /* The power that joystick inputs are raised to. */
+    @Param({ "1.0", "2.0", "3.0" })
+    public double amplificationFactor;
+
+    /* The joystick inputs to shape, as if they'd been read from the joystick. */
+    public double x = 0.42, y = -0.73;
+
+    @Benchmark
+    public double shapeInputs() {
+        return DifferentialDriveCommand.shapeInput(this.x, this.amplificationFactor)
+                + DifferentialDriveCommand.shapeInput(this.y, this.amplificationFactor);
+    }
+}
@@ -0,0 +1,91 @@
+package frc.robot.commands;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+
+import frc.robot.Constants;
+import frc.robot.commands.MoveToReflectiveTargetCommand.Axis;
+
+/**
+ * Benchmarks the per-frame work done by the MoveToReflectiveTargetCommand on
+ * its state and offsets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class MoveToReflectiveTargetCommandBenchmark {
+    /* The number of frames kept by the command's state. */
+    @Param({ "15", "150" })
+    public int maxFrames;
+
+    /* The state being benchmarked. */
+    private MoveToReflectiveTargetCommand.State state;
+
+    /* A set of noisy frames, cycled through by the benchmarks. */
+    private double[][] frames;
+
+    /* The index of the next frame to put into the state. */
+    private int nextFrame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.state = new MoveToReflectiveTargetCommand.State(this.maxFrames);
+        this.frames = new double[1024][];
+
+        java.util.Random random = new java.util.Random(4121);
+        for (int i = 0; i < this.frames.length; i++) {
+            this.frames[i] = new double[] { random.nextGaussian() * 5, random.nextGaussian() * 2,
+                    0.5 + random.nextGaussian() * 0.05 };
+        }
+
+        // Fill the state's window before measuring
+        for (int i = 0; i <= this.maxFrames; i++) {
+            this.putFrame();
+        }
+    }
+
+    /**
+     * Puts the next frame into the state.
+     */
+    private void putFrame() {
+        this.state.putValues(this.frames[this.nextFrame], true, this.nextFrame * 0.02);
+        this.nextFrame = (this.nextFrame + 1) & (this.frames.length - 1);
+    }
+
+    @Benchmark
+    public double putValuesAndGetOffsets() {
+        this.putFrame();
+
+        double[] offsets = this.state.getOffsets();
+        return offsets[0] + offsets[1] + offsets[2];
+    }
+
+    @Benchmark
+    public boolean needsCorrectionOnEachAxis() {
+        double tolerance = Constants.VisionConstants.DEFAULT_ERROR_TOLERANCE;
+
+        return this.state.needsCorrectionOnAxis(Axis.X, tolerance)
+                | this.state.needsCorrectionOnAxis(Axis.Y, tolerance)
+                | this.state.needsCorrectionOnAxis(Axis.Z, tolerance);
+    }
+
+    @Benchmark
+    public double normalizeOffsets() {
+        double[] frame = this.frames[this.nextFrame];
+        this.nextFrame = (this.nextFrame + 1) & (this.frames.length - 1);
+
+        double kChange = Constants.VisionConstants.DEFAULT_KCHANGE;
+
+        return MoveToReflectiveTargetCommand.normalizeOffset(frame[0], Axis.X, kChange)
+                + MoveToReflectiveTargetCommand.normalizeOffset(frame[1], Axis.Y, kChange)
+                + MoveToReflectiveTargetCommand.normalizeOffset(frame[2], Axis.Z, kChange);
+    }
+}
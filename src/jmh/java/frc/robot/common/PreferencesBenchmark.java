@@ -0,0 +1,35 @@
+package frc.robot.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks building the names of preferences keys, which happens whenever a
+ * preference handle is created.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PreferencesBenchmark {
+    /* A group of preferences, standing in for a subsystem. */
+    private final Preferences.Group group = () -> "vision";
+
+    /* A key that has already been built. */
+    private final Preferences.Key key = new Preferences.Key(this.group, "kP");
+
+    @Benchmark
+    public String keyToString() {
+        return this.key.toString();
+    }
+
+    @Benchmark
+    public String buildKeyAndToString() {
+        return this.group.preferencesKey("kP").toString();
+    }
+}
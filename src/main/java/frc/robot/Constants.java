@@ -7,6 +7,8 @@
 
 package frc.robot;
 
+import frc.robot.common.Filters;
+import frc.robot.common.Trajectories;
 import frc.robot.subsystems.VisionSubsystem.LEDMode;
 
 /**
@@ -15,6 +17,30 @@ import frc.robot.subsystems.VisionSubsystem.LEDMode;
 public final class Constants {
     public static final int MISERY_MOTOR = 9;
 
+	/**
+	 * AutonomousConstants defines the paths that the robot can follow in
+	 * autonomous, and how it follows them.
+	 */
+	public static final class AutonomousConstants {
+		/* The fastest that the robot may drive, and speed up, along a path. */
+		public static final double MAX_VELOCITY_METERS_PER_SECOND = 2.0;
+		public static final double MAX_ACCELERATION_METERS_PER_SECOND_SQ = 1.5;
+
+		/*
+		 * The gains of the Ramsete controller, which corrects for the robot drifting
+		 * off of a path. These are the values recommended by WPILib.
+		 */
+		public static final double RAMSETE_B = 2.0;
+		public static final double RAMSETE_ZETA = 0.7;
+
+		/* Backs off of the initiation line, towards the power port. */
+		public static final Trajectories.Path LEAVE_LINE = new Trajectories.Path("leaveLine", true,
+				new double[][] { { 0.0, 0.0, 0.0 }, { -1.5, 0.0, 0.0 } });
+
+		/* Every path that is cached in the deploy directory. */
+		public static final Trajectories.Path[] PATHS = new Trajectories.Path[] { LEAVE_LINE };
+	}
+
 	public static final class ControlPanelConstants {
 		public static final int CONTROL_PANEL_MOTOR = 4;
 	}
@@ -36,7 +62,39 @@ public final class Constants {
 
 		public static final boolean GYRO_REVERSED = false;
 
+		/* The number of headings (one per loop) kept for latency compensation. */
+		public static final int HEADING_HISTORY_SIZE = 50;
+
 		public static final double DISTANCE_PER_PULSE= (64910.5/100)/2048;
+
+		/* The number of pulses the Falcons' integrated encoders count per revolution. */
+		public static final int ENCODER_TICKS_PER_REVOLUTION = 2048;
+
+		/*
+		 * The distance the robot travels per encoder pulse. DISTANCE_PER_PULSE is the
+		 * number of motor revolutions per inch of travel (64910.5 pulses per 100
+		 * inches), so this is its reciprocal in meters per pulse.
+		 */
+		public static final double METERS_PER_PULSE = 0.0254 / (DISTANCE_PER_PULSE * ENCODER_TICKS_PER_REVOLUTION);
+
+		/* The slot on each talon holding the gains for velocity drive. */
+		public static final int VELOCITY_SLOT = 0;
+
+		/*
+		 * The gains of the talons' velocity loops, in units of full output (1023) per
+		 * encoder pulse per 100ms. kF is full output over the Falcon's free speed of
+		 * 6380 rpm.
+		 */
+		public static final double VELOCITY_P = 0.1;
+		public static final double VELOCITY_I = 0.0;
+		public static final double VELOCITY_D = 0.0;
+		public static final double VELOCITY_F = 1023.0 / (6380.0 / 600.0 * ENCODER_TICKS_PER_REVOLUTION);
+
+		/* The time to wait for the talons to confirm each setting. */
+		public static final int CONFIG_TIMEOUT_MS = 10;
+
+		/* The distance between the left and right wheels. */
+		public static final double TRACK_WIDTH_METERS = 0.7;
 	}
 
 	public static final class IntakeConstants {
@@ -44,17 +102,106 @@ public final class Constants {
 		public static final int INTAKE_SOLENOID_RETRACT = 3;
 		public static final int INTAKE_MOTOR = 8;
 		public static final double MAXIMUM_INTAKE_SPEED = 0.4;
+
+		/*
+		 * The intake is stalled when it is driven at least this hard, but draws at
+		 * least this much stator current while turning no faster than this, in encoder
+		 * pulses per 100ms.
+		 */
+		public static final double STALL_MINIMUM_OUTPUT = 0.1;
+		public static final double STALL_CURRENT_AMPS = 25.0;
+		public static final double STALL_VELOCITY = 50.0;
+
+		/* How long the intake must stay stalled to be jammed. */
+		public static final double STALL_SECONDS = 0.15;
+
+		/* How hard, and for how long, the intake runs backwards to clear a jam. */
+		public static final double UNJAM_SPEED = -1.0;
+		public static final double UNJAM_SECONDS = 0.25;
+
+		/*
+		 * The number of times that the intake retries within the window before giving
+		 * up, until it is next stopped or reversed.
+		 */
+		public static final int MAXIMUM_UNJAM_ATTEMPTS = 3;
+		public static final double UNJAM_WINDOW_SECONDS = 2.0;
+
+		/* The time to wait for the talon to confirm each setting. */
+		public static final int CONFIG_TIMEOUT_MS = 10;
 	}
 
 	public static final class LauncherConstants {
 		public static final int LAUNCHER_MOTOR_1 = 5;
 		public static final int LAUNCHER_MOTOR_2 = 6;
+
+		/* The number of pulses the Falcons' integrated encoders count per revolution. */
+		public static final int ENCODER_TICKS_PER_REVOLUTION = 2048;
+
+		/*
+		 * The speed that the flywheel is run at to launch, in motor rpm, until the
+		 * target has been seen, or if the shot map can't be loaded.
+		 */
+		public static final double FLYWHEEL_RPM = 4500.0;
+
+		/*
+		 * The file, in the deploy directory, mapping the distance to the target to the
+		 * flywheel's speed, and the name of the speed's column in it.
+		 */
+		public static final String SHOT_MAP_FILE = "shots.csv";
+		public static final String SHOT_MAP_RPM_COLUMN = "rpm";
+
+		/* How close to its setpoint the flywheel must be to launch, in rpm. */
+		public static final double FLYWHEEL_TOLERANCE_RPM = 100.0;
+
+		/* The slot on the leading talon holding the flywheel's gains. */
+		public static final int FLYWHEEL_SLOT = 0;
+
+		/*
+		 * The gains of the flywheel's velocity loop, in units of full output (1023) per
+		 * encoder pulse per 100ms. kF is full output over the Falcon's free speed of
+		 * 6380 rpm, and kS is the output needed to overcome friction, added on top.
+		 */
+		public static final double FLYWHEEL_P = 0.25;
+		public static final double FLYWHEEL_I = 0.0;
+		public static final double FLYWHEEL_D = 5.0;
+		public static final double FLYWHEEL_F = 1023.0 / (6380.0 / 600.0 * ENCODER_TICKS_PER_REVOLUTION);
+		public static final double FLYWHEEL_KS = 0.02;
+
+		/* The time to wait for the talons to confirm each setting. */
+		public static final int CONFIG_TIMEOUT_MS = 10;
+
+		/*
+		 * How far below its setpoint the flywheel must drop, after being at speed, for
+		 * a ball to be counted as launched.
+		 */
+		public static final double SHOT_DIP_RPM = 250.0;
+
+		/*
+		 * The time after a shot during which another shot isn't counted, so that the
+		 * photoeye and the velocity dip of one ball aren't counted twice.
+		 */
+		public static final double SHOT_DEDUPE_SECONDS = 0.1;
+
+		/* The longest that the launch command may run for. */
+		public static final double LAUNCH_TIMEOUT_SECONDS = 10.0;
 	}
 
 	public static final class LiftConstants {
 	}
 
 	public static final class NavigationConstants {
+		/* The time between each update of the robot's pose, in seconds (200 Hz). */
+		public static final double ODOMETRY_PERIOD_SECONDS = 0.005;
+
+		/* The number of poses (one per update) kept for latency compensation. */
+		public static final int POSE_HISTORY_SIZE = 200;
+
+		/*
+		 * How often the navx and the drivetrain talons send new readings, so that each
+		 * odometry update sees fresh values.
+		 */
+		public static final byte NAVX_UPDATE_RATE_HZ = (byte) 200;
+		public static final int ENCODER_STATUS_PERIOD_MS = 5;
 	}
 
 	public static final class SerializerConstants {
@@ -64,6 +211,61 @@ public final class Constants {
 		public static final int SERIALIZER_MOTOR = 7;
         public static final int FEED_MOTOR = 10;
 		public static final double SERIALIZER_SPEED = 0.3;
+
+		/* The photoeyes read below this voltage while a ball blocks them. */
+		public static final double SENSOR_BLOCKED_VOLTAGE = 0.85;
+
+		/*
+		 * How far either side of the blocked voltage a photoeye must read to change
+		 * state, so that noise around the threshold isn't taken for a ball.
+		 */
+		public static final double SENSOR_HYSTERESIS_VOLTAGE = 0.1;
+
+		/* The number of photoeye edges that can wait to be counted. A power of two. */
+		public static final int SENSOR_EDGE_CAPACITY = 64;
+
+		/* The number of balls loaded at the start of a match, and the most held. */
+		public static final int INITIAL_BALLS = 3;
+		public static final int MAX_BALLS = 5;
+
+		/*
+		 * How far along the belt, in inches from the photoeye at the entrance, the
+		 * middle and launcher photoeyes are.
+		 */
+		public static final double MIDDLE_SENSOR_POSITION = 16.0;
+		public static final double LAUNCHER_SENSOR_POSITION = 32.0;
+
+		/*
+		 * Where the front of the first ball waits to be launched, just short of the
+		 * launcher's photoeye, and the distance kept between the fronts of the balls
+		 * behind it. A ball is 7 inches across.
+		 */
+		public static final double READY_POSITION = LAUNCHER_SENSOR_POSITION - 1.0;
+		public static final double BALL_PITCH = 7.5;
+
+		/* The number of encoder pulses for each inch that the belt travels. */
+		public static final double BELT_TICKS_PER_INCH = 4096.0 / (1.5 * Math.PI);
+
+		/*
+		 * The gain of the belt's position loop, in units of full output (1023) per
+		 * pulse of error, and the fastest that the loop may run the belt.
+		 */
+		public static final int BELT_SLOT = 0;
+		public static final double BELT_P = 0.6;
+		public static final double BELT_PEAK_OUTPUT = 0.5;
+
+		/* How close to its target, in inches, the belt must be to stop. */
+		public static final double BELT_TOLERANCE = 0.25;
+
+		/* The number of the belt's past positions kept, one per loop. */
+		public static final int BELT_HISTORY_SIZE = 50;
+
+		/* The time to wait for the talon to confirm each setting. */
+		public static final int CONFIG_TIMEOUT_MS = 10;
+
+		/* How fast, and for how long, the belts run to move the balls forward. */
+		public static final double BELT_ADVANCE_SPEED = 0.5;
+		public static final double BELT_ADVANCE_SECONDS = 0.5;
 	}
 
 	/**
@@ -120,11 +322,175 @@ public final class Constants {
 		 * for the command to be stopped.
 		 */
 		public static int TARGETLESS_FRAMES_TO_Z_STOP = 10;
+
+		/*
+		 * The time, in milliseconds, between the limelight capturing an image and the
+		 * pipeline starting to process it. Added on top of the reported pipeline
+		 * latency (tl).
+		 */
+		public static final double IMAGE_CAPTURE_LATENCY_MS = 11.0;
+
+		/* The height of the limelight's lens above the floor. */
+		public static final double CAMERA_HEIGHT_METERS = 0.6;
+
+		/* The angle of the limelight above the horizontal. */
+		public static final double CAMERA_MOUNT_ANGLE_DEGREES = 20.0;
+
+		/* The height of the center of the power port's reflective target. */
+		public static final double TARGET_HEIGHT_METERS = 2.28;
+
+		/*
+		 * The smallest angle above the camera's horizon that a target is assumed to be
+		 * at, so that distances stay finite.
+		 */
+		public static final double MINIMUM_TARGET_ELEVATION_DEGREES = 1.0;
+
+		/* The spacing of the ty values in the precomputed distance table. */
+		public static final double DISTANCE_TABLE_STEP_DEGREES = 0.05;
+
+		/*
+		 * Whether the vision command should correct along the Z axis using the
+		 * estimated distance to the target rather than its area.
+		 */
+		public static final boolean DEFAULT_Z_USES_DISTANCE = false;
+
+		/* The distance from the target that the vision command drives to. */
+		public static final double DEFAULT_TARGET_DISTANCE_METERS = 3.0;
+
+		/* The estimator used to smooth the offsets from the limelight. */
+		public static final Filters.EstimatorType DEFAULT_ESTIMATOR = Filters.EstimatorType.MEDIAN;
+
+		/*
+		 * The fraction of the prediction error applied to the offset and its rate by
+		 * the alpha-beta estimator.
+		 */
+		public static final double DEFAULT_ALPHA = 0.5;
+		public static final double DEFAULT_BETA = 0.1;
+
+		/*
+		 * The standard deviation of the limelight's measurements, and of the change in
+		 * their rate per second, used by the Kalman estimator. Expressed as fractions
+		 * of DEFAULT_BOUNDS.
+		 */
+		public static final double DEFAULT_KALMAN_MEASUREMENT_DEVIATION = 0.01;
+		public static final double DEFAULT_KALMAN_ACCELERATION_DEVIATION = 0.5;
+	}
+
+	/**
+	 * SimulationConstants defines the models used to stand in for the robot's
+	 * hardware in desktop simulation.
+	 */
+	public static final class SimulationConstants {
+		/* The speed of each side of the drivetrain at full output. */
+		public static final double MAX_SPEED_METERS_PER_SECOND = 4.0;
+
+		/* The distance between the left and right wheels of the drivetrain. */
+		public static final double TRACK_WIDTH_METERS = 0.7;
+
+		/*
+		 * Where the robot starts on the field, in meters, and the direction it faces, in
+		 * degrees counter-clockwise from the field's X axis.
+		 */
+		public static final double STARTING_X_METERS = 4.0;
+		public static final double STARTING_Y_METERS = 0.5;
+		public static final double STARTING_ANGLE_DEGREES = 10.0;
+
+		/*
+		 * Where the reflective target sits on the field. The target faces along the
+		 * field's X axis.
+		 */
+		public static final double TARGET_X_METERS = 0.0;
+		public static final double TARGET_Y_METERS = 0.0;
+
+		/* The area of the reflective tape, seen head on. */
+		public static final double TARGET_AREA_SQUARE_METERS = 0.067;
+
+		/* The widest angle from head on that the target can still be seen from. */
+		public static final double TARGET_VISIBILITY_DEGREES = 70.0;
+
+		/*
+		 * The direction the limelight faces, in degrees counter-clockwise from the
+		 * front of the robot. The vision command drives backwards towards the target,
+		 * so the camera faces out of the back.
+		 */
+		public static final double CAMERA_YAW_DEGREES = 180.0;
+
+		/* The limelight's field of view. */
+		public static final double CAMERA_HORIZONTAL_FOV_DEGREES = 59.6;
+		public static final double CAMERA_VERTICAL_FOV_DEGREES = 49.7;
+
+		/* The standard deviation of the noise added to each simulated measurement. */
+		public static final double DEFAULT_TX_NOISE_DEGREES = 0.2;
+		public static final double DEFAULT_TY_NOISE_DEGREES = 0.1;
+		public static final double DEFAULT_TA_NOISE_FRACTION = 0.03;
+
+		/*
+		 * The time between the simulated limelight capturing a frame and publishing it,
+		 * including IMAGE_CAPTURE_LATENCY_MS.
+		 */
+		public static final double DEFAULT_LATENCY_MS = 35.0;
+
+		/* The chance that the simulated limelight loses sight of a visible target. */
+		public static final double DEFAULT_DROPOUT_PROBABILITY = 0.02;
+
+		/* The seed of the simulated limelight's noise, so runs can be repeated. */
+		public static final long NOISE_SEED = 2020;
 	}
 
 	public static final class OIConstants {
 	}
 
+	public static final class ProfilerConstants {
+		/* The longest that a loop may take before it counts as an overrun. */
+		public static final long LOOP_BUDGET_NANOS = 20_000_000L;
+
+		/* The number of loops between each publish of the timings, about a second. */
+		public static final int PUBLISH_PERIOD_LOOPS = 50;
+
+		/* Only every this many overruns is warned about, to keep the console readable. */
+		public static final long OVERRUN_WARNING_PERIOD = 50;
+	}
+
+	public static final class TelemetryConstants {
+		/* The directory that the USB stick is mounted at on the roboRIO. */
+		public static final String USB_DIRECTORY = "/u";
+
+		/* The number of log files of each kind that are kept, newest first. */
+		public static final int MAX_LOG_FILES = 5;
+
+		/* The space that must be left free on the disk after making a log file. */
+		public static final long MIN_FREE_BYTES = 64L << 20;
+
+		/* The number of samples that can wait in memory to be written; a power of two. */
+		public static final int RING_CAPACITY = 1 << 14;
+
+		/* The number of samples that the log file holds before wrapping around. */
+		public static final int FILE_RECORDS = 1 << 20;
+
+		/* The room in the log file for the names of the signals, in bytes. */
+		public static final int NAMES_BYTES = 16 * 1024;
+
+		/* The time between each write of waiting samples to the log file. */
+		public static final long FLUSH_PERIOD_MS = 50;
+
+		/* The time between each sync of the log file to the USB stick. */
+		public static final long FORCE_PERIOD_MS = 1000;
+
+		/* The number of vision log records that can wait to be written; a power of two. */
+		public static final int VISION_LOG_RING_CAPACITY = 256;
+
+		/* The size that a vision log stops growing at, about an hour of enabled time. */
+		public static final int VISION_LOG_MAX_BYTES = 16 << 20;
+	}
+
+	public static final class ControlConstants {
+		/* The time between each run of the fast control loop, four per robot loop. */
+		public static final double PERIOD_SECONDS = 0.005;
+
+		/* The real-time priority of the control loop's thread, above the robot loop's. */
+		public static final int THREAD_PRIORITY = 40;
+	}
+
     //Serializer Motors
     public static final int ROLLER_MOTOR = 10; //For use with Falcon 500
 
@@ -134,5 +500,4 @@ public final class Constants {
     public static final int PHOTOELECTRIC_SENSOR_3 = 2;
     // Controllers
     public static final int JOYSTICK = 0;
-    public static final double LAUNCHER_VELOCITY_MS = 1.88;
 }
@@ -10,6 +10,11 @@ package frc.robot;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.common.Coalescing;
+import frc.robot.common.ControlLoop;
+import frc.robot.common.Preferences;
+import frc.robot.common.Profiler;
+import frc.robot.common.Telemetry;
 
 
 /**
@@ -39,6 +44,19 @@ public class Robot extends TimedRobot {
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
     this.m_commands = CommandScheduler.getInstance();
+
+    // Every preference has been declared by now, so load and check them all at once
+    Preferences.loadAll();
+
+    // Every subsystem's signals have been created by now, so start logging them
+    Telemetry.logCommands(this.m_commands);
+    Telemetry.start();
+
+    // Every controller has been registered by now, so start running them
+    ControlLoop.start();
+
+    // Open the vision log now, rather than on the first enabled loop
+    m_robotContainer.getVisionRecorder().start();
   }
 
   /**
@@ -60,6 +78,30 @@ public class Robot extends TimedRobot {
     // robot's periodic
     // block in order for anything in the Command-based framework to work.
     CommandScheduler.getInstance().run();
+
+    // Off of the robot, let the simulated hardware respond to what was just run
+    m_robotContainer.updateSimulation();
+
+    // Record what the scheduler just did with the vision subsystem
+    m_robotContainer.getVisionRecorder().record();
+
+    // Show how many motor controller calls were sent, and how many were skipped
+    Coalescing.publish();
+  }
+
+  /**
+   * Runs one robot loop: the mode's init and periodic, robotPeriodic, and the
+   * dashboard updates. The whole loop is timed, so that an overrun can be traced
+   * to what caused it, wherever it happened.
+   */
+  @Override
+  protected void loopFunc() {
+    Profiler.startLoop();
+    try {
+      super.loopFunc();
+    } finally {
+      Profiler.endLoop();
+    }
   }
 
   /**
@@ -67,6 +109,9 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void disabledInit() {
+    // Make sure everything recorded while enabled makes it to disk
+    m_robotContainer.getVisionRecorder().flush();
+    Telemetry.flush();
   }
 
   @Override
@@ -79,7 +124,10 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void autonomousInit() {
+    this.m_autonomousCommand = m_robotContainer.getAutonomousCommand();
 
+    // The path was loaded when the robot started, so it can be followed right away
+    this.m_commands.schedule(this.m_autonomousCommand);
   }
 
   /**
@@ -9,20 +9,31 @@ package frc.robot;
 
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.Preferences;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.StartEndCommand;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
 import frc.robot.commands.DeliverIntakeCommand;
 import frc.robot.commands.DifferentialDriveCommand;
 import frc.robot.commands.DriveCommand;
+import frc.robot.commands.FollowTrajectoryCommand;
 import frc.robot.commands.IntakeDirectionControl;
 import frc.robot.commands.LaunchAllCommand;
 import frc.robot.commands.MoveToReflectiveTargetCommand;
 import frc.robot.commands.ShiftGearCommand;
+import frc.robot.common.Clock;
+import frc.robot.common.Profiler;
+import frc.robot.common.Trajectories;
+import frc.robot.replay.VisionLog;
+import frc.robot.sim.SimulatedDrivetrain;
+import frc.robot.sim.SimulatedLimelight;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.DriveSubsystem.MotorControllerConfiguration;
 import frc.robot.subsystems.IntakeSubsystem;
 import frc.robot.subsystems.LauncherSubsystem;
+import frc.robot.subsystems.NavigationSubsystem;
 import frc.robot.subsystems.SerializerSubsystem;
+import frc.robot.subsystems.SuperstructureSubsystem;
 import frc.robot.subsystems.VisionSubsystem;
 import frc.robot.subsystems.VisionSubsystem.LimelightConfiguration;
 
@@ -42,6 +53,9 @@ public class RobotContainer {
     /* The robot's vision subsystem. */
     private final VisionSubsystem m_vision;
 
+    /* Tracks the robot's pose on the field. */
+    private final NavigationSubsystem m_navigation;
+
     /* END SUBSYSTEMS */
 
     /* The robot's settings. */
@@ -56,23 +70,47 @@ public class RobotContainer {
     /* BEGIN COMMANDS */
 
     /* A fallback teleOp command for the robot (arcade drive). */
-    private final DifferentialDriveCommand fallbackTeleopCommand;
+    private final Command fallbackTeleopCommand;
 
     /* The current autonomous command for the robot. */
-    private final MoveToReflectiveTargetCommand visionCommand;
+    private final Command visionCommand;
+
+    /* Follows the autonomous path, which is loaded from the deploy directory. */
+    private final Command autonomousCommand;
 
     /* A command used to control the intake. */
-    private final DeliverIntakeCommand deliverIntakeCommand;
+    private final Command deliverIntakeCommand;
 
     /* The command used to launch each of the power cells. */
-    private final LaunchAllCommand launchCommand;
+    private final Command launchCommand;
+
+    /* Spins the flywheel up to the speed for the target while the robot aligns. */
+    private final Command prespinCommand;
+
+    /* Aligns the robot with vision, spinning the flywheel up until vision ends. */
+    private final Command alignCommand;
+
+    /* Runs every ball in the serializer back out through the intake while held. */
+    private final Command emptyCommand;
 
     private SerializerSubsystem m_serializer;
     private LauncherSubsystem m_launcher;
 
-    private IntakeDirectionControl fullForwardCommand;
-    private IntakeDirectionControl fullReverseCommand;
-    //private TestLaunchCommand m_testLaunchCommand;
+    /* Drives the intake, serializer and launcher together. */
+    private SuperstructureSubsystem m_superstructure;
+
+    /* Records the vision subsystem and drivetrain, for replaying off of the robot. */
+    private final VisionLog.Recorder visionRecorder;
+
+    /* Stand-ins for the drivetrain and limelight in simulation; null on the robot. */
+    private SimulatedDrivetrain simulatedDrivetrain;
+    private SimulatedLimelight simulatedLimelight;
+
+    /* The time at which the simulation was last updated. */
+    private double lastSimulationTime;
+
+    private Command fullForwardCommand;
+    private Command fullReverseCommand;
 
     /* END COMMANDS */
 
@@ -96,32 +134,71 @@ public class RobotContainer {
         this.m_intake = new IntakeSubsystem();
         this.m_vision = new VisionSubsystem(visionCfg);
 
+        // Off of the robot, move a simulated robot around and let a simulated limelight
+        // look at the target from it
+        if (RobotBase.isSimulation()) {
+            this.simulatedDrivetrain = new SimulatedDrivetrain(this.m_drivetrain);
+            this.simulatedLimelight = new SimulatedLimelight(this.simulatedDrivetrain,
+                    SimulatedLimelight.Configuration.getDefault().applyPreferences(this.m_preferences));
+            this.lastSimulationTime = Clock.now();
+
+            this.m_drivetrain.simulateSensors(this.simulatedDrivetrain::getHeading,
+                    this.simulatedDrivetrain::getLeftDistance, this.simulatedDrivetrain::getRightDistance);
+        }
+
+        // Start tracking the robot's pose once the drivetrain's sensors are set up
+        this.m_navigation = new NavigationSubsystem(this.m_drivetrain);
+
         // Set up the controllers for the teleop command
         this.m_leftDriverJoystick = new Joystick(0);
         this.m_operatorJoystick = new Joystick(1);
 
         // Set up an alternative teleop command that uses arcade drive; use just one
         // joystick
-        this.fallbackTeleopCommand = new DifferentialDriveCommand(this.m_drivetrain,
-                () -> this.m_leftDriverJoystick.getRawAxis(0), () -> -this.m_leftDriverJoystick.getRawAxis(1)).applyPreferences(this.m_preferences);
+        this.fallbackTeleopCommand = Profiler.profile("ArcadeDrive", new DifferentialDriveCommand(this.m_drivetrain,
+                () -> this.m_leftDriverJoystick.getRawAxis(0), () -> -this.m_leftDriverJoystick.getRawAxis(1)).applyPreferences(this.m_preferences));
 
         // SmartDashboard in order to override default values
-        this.visionCommand = new MoveToReflectiveTargetCommand(this.m_drivetrain, this.m_vision,
-                MoveToReflectiveTargetCommand.Configuration.getDefault().applyPreferences(this.m_preferences));
+        this.visionCommand = Profiler.profile("VisionAlign",
+                new MoveToReflectiveTargetCommand(this.m_drivetrain, this.m_vision,
+                        MoveToReflectiveTargetCommand.Configuration.getDefault().applyPreferences(this.m_preferences)));
+
+        // Load the autonomous path now, so that following it can start as soon as
+        // autonomous does
+        this.autonomousCommand = Profiler.profile("Autonomous",
+                new FollowTrajectoryCommand(this.m_drivetrain, this.m_navigation,
+                        Trajectories.load(Constants.AutonomousConstants.LEAVE_LINE)));
 
         // Setup a command to control the intake subsystem from, using the left driver
         // joystick
-        this.deliverIntakeCommand = new DeliverIntakeCommand(this.m_intake);
-
-        this.fullForwardCommand = new IntakeDirectionControl(this.m_intake, true);
-        this.fullReverseCommand = new IntakeDirectionControl(this.m_intake, false);
+        this.deliverIntakeCommand = Profiler.profile("DeliverIntake", new DeliverIntakeCommand(this.m_intake));
 
         this.m_serializer = new SerializerSubsystem();
-        this.m_launcher = new LauncherSubsystem();
+        this.m_launcher = new LauncherSubsystem(this.m_vision);
+
+        // Only the superstructure drives the ball path, so each of these just gives it
+        // a goal
+        this.m_superstructure = new SuperstructureSubsystem(this.m_intake, this.m_serializer, this.m_launcher);
 
-        this.launchCommand = new LaunchAllCommand(this.m_serializer, this.m_launcher);
+        this.fullForwardCommand = Profiler.profile("IntakeForward",
+                new IntakeDirectionControl(this.m_superstructure, true));
+        this.fullReverseCommand = Profiler.profile("IntakeReverse",
+                new IntakeDirectionControl(this.m_superstructure, false));
 
-        //this.m_testLaunchCommand = new TestLaunchCommand(this.m_serializer, this.m_launcher);
+        this.launchCommand = Profiler.profile("LaunchAll", new LaunchAllCommand(this.m_superstructure));
+        this.prespinCommand = Profiler.profile("Prespin",
+                new StartEndCommand(() -> this.m_superstructure.setPrespin(true),
+                        () -> this.m_superstructure.setPrespin(false)));
+
+        // Only spin the flywheel up for as long as the robot is aligning, however
+        // vision ends
+        this.alignCommand = this.visionCommand.deadlineWith(this.prespinCommand);
+
+        // Record every frame that the vision command sees, along with how we drove
+        this.visionRecorder = new VisionLog.Recorder(this.m_drivetrain, this.m_vision, this.alignCommand);
+        this.emptyCommand = Profiler.profile("EmptySerializer", new StartEndCommand(
+                () -> this.m_superstructure.setGoal(SuperstructureSubsystem.Goal.EMPTY),
+                () -> this.m_superstructure.setGoal(SuperstructureSubsystem.Goal.IDLE), this.m_superstructure));
 
         // Configure the button bindings
         this.configureButtonBindings();
@@ -143,7 +220,7 @@ public class RobotContainer {
         // Change to left bumper
 
 
-        gearShiftButton.toggleWhenPressed(new ShiftGearCommand(this.m_drivetrain));
+        gearShiftButton.toggleWhenPressed(Profiler.profile("ShiftGear", new ShiftGearCommand(this.m_drivetrain)));
 
         deliverIntakeButton.toggleWhenPressed(this.deliverIntakeCommand);
 
@@ -152,7 +229,7 @@ public class RobotContainer {
         // activateIntakeButton.whenPressed(() -> this.intakeControlCommand.setDirection(true));
 
         // reverseIntakeButton.whenPressed(new ReverseIntakeCommand(this.m_intake));
-        activateVisionButton.toggleWhenPressed(this.visionCommand);
+        activateVisionButton.toggleWhenPressed(this.alignCommand);
 
         // JoystickButton bob = new JoystickButton(m_driveController, 0);
         //JoystickButton ballPrep = new JoystickButton(this.m_leftDriverJoystick, 1);
@@ -161,13 +238,51 @@ public class RobotContainer {
         JoystickButton ballsOut = new JoystickButton(this.m_operatorJoystick, 6);
         ballsOut.whenHeld(this.launchCommand);
 
+        // Empty the whole serializer back out only while the button is held
+        JoystickButton emptyButton = new JoystickButton(this.m_operatorJoystick, 4);
+        emptyButton.whenHeld(this.emptyCommand);
+
 
 
         // this.m_intake.setDefaultCommand(intakeControlCommand);
     }
 
+    /**
+     * Gets the command that should be run during autonomous.
+     *
+     * @return the autonomous command
+     */
+    public Command getAutonomousCommand() {
+        return this.autonomousCommand;
+    }
+
     public Command getTeleopCommand() {
         // Use differential drive
         return this.fallbackTeleopCommand;
     }
+
+    /**
+     * Gets the recorder used to log vision frames and drivetrain outputs.
+     *
+     * @return the vision recorder
+     */
+    public VisionLog.Recorder getVisionRecorder() {
+        return this.visionRecorder;
+    }
+
+    /**
+     * Moves the simulated robot according to how it was last driven, and lets the
+     * simulated limelight capture and publish its frames. Does nothing on the
+     * robot.
+     */
+    public void updateSimulation() {
+        if (this.simulatedDrivetrain == null) {
+            return;
+        }
+
+        double now = Clock.now();
+        this.simulatedDrivetrain.update(now - this.lastSimulationTime);
+        this.simulatedLimelight.update();
+        this.lastSimulationTime = now;
+    }
 }
@@ -65,9 +65,9 @@ public class DifferentialDriveCommand extends CommandBase
     public DifferentialDriveCommand applyPreferences(Preferences prefs) {
         // Since we have a preferences instance to use, we can get the maximum speed
         // from there
-        this.maximumSpeed = () -> prefs.getDouble(this.m_drivetrain.preferencesKey("maximumSpeed").toString(), 1.0);
+        this.maximumSpeed = this.m_drivetrain.doublePref("maximumSpeed", 1.0, 0.0, 1.0);
 
-        this.amplificationFactor = () -> prefs.getDouble(this.m_drivetrain.preferencesKey("inputAmplificationFactor").toString(), 1.0);
+        this.amplificationFactor = this.m_drivetrain.doublePref("inputAmplificationFactor", 1.0, 0.1, 5.0);
 
         this.finalX = () -> this.maximumSpeed.getAsDouble() * this.xInput.getAsDouble();
         this.finalY = () -> this.maximumSpeed.getAsDouble() * this.yInput.getAsDouble();
@@ -90,22 +90,32 @@ public class DifferentialDriveCommand extends CommandBase
 
         // Normalize each of the inputs, with consideration to the provided amplifciation factor
         for (int i = 0; i < inputs.length; i++) {
-            // Normalize the input
-            double normalized = Math.pow(inputs[i], inputAmplificationFactor);
-            
-            // Reapply a negative sign, if it exists in the original input
-            if (inputs[i] < 0 && normalized >= 0) {
-                normalized *= -1;
-            }
-
-            // Put the normalized input back into the array
-            inputs[i] = normalized;
+            inputs[i] = shapeInput(inputs[i], inputAmplificationFactor);
         }
 
         // Drive the drivetrain with a differential drive config
         this.m_drivetrain.drive(Type.DIFFERENTIAL, inputs);
     }
 
+    /**
+     * Amplifies a single joystick input by the given factor, keeping its sign.
+     *
+     * @param input               the raw input from the joystick
+     * @param amplificationFactor the power that the input is raised to
+     * @return the amplified input
+     */
+    static double shapeInput(double input, double amplificationFactor) {
+        // Normalize the input
+        double normalized = Math.pow(input, amplificationFactor);
+
+        // Reapply a negative sign, if it exists in the original input
+        if (input < 0 && normalized >= 0) {
+            normalized *= -1;
+        }
+
+        return normalized;
+    }
+
     /**
      * Returns whether or not the command has finished executing.
      * 
@@ -0,0 +1,85 @@
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.controller.RamseteController;
+import edu.wpi.first.wpilibj.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.kinematics.DifferentialDriveKinematics;
+import edu.wpi.first.wpilibj.kinematics.DifferentialDriveWheelSpeeds;
+import edu.wpi.first.wpilibj.trajectory.Trajectory;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.AutonomousConstants;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.common.Clock;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.NavigationSubsystem;
+
+/**
+ * Drives the robot along a trajectory. The Ramsete controller corrects for any
+ * drift between where the navigation subsystem says the robot is and where the
+ * trajectory says it should be, and the resulting wheel speeds are tracked by
+ * the drivetrain's velocity loops.
+ */
+public class FollowTrajectoryCommand extends CommandBase {
+    /* The drivetrain that will drive along the trajectory. */
+    private final DriveSubsystem drivetrain;
+
+    /* Tracks where the robot is as it drives. */
+    private final NavigationSubsystem navigation;
+
+    /* The trajectory to follow. */
+    private final Trajectory trajectory;
+
+    /* Corrects the trajectory's speeds for any error in the robot's pose. */
+    private final RamseteController controller;
+
+    /* Converts the corrected speeds of the robot into the speed of each side. */
+    private final DifferentialDriveKinematics kinematics;
+
+    /* The time at which the robot started following the trajectory. */
+    private double startTime;
+
+    /**
+     * Initializes a new FollowTrajectoryCommand.
+     *
+     * @param drivetrain the drivetrain that should drive along the trajectory
+     * @param navigation the navigation subsystem tracking the robot's pose
+     * @param trajectory the trajectory to follow, which should already have been
+     *                   generated or loaded
+     */
+    public FollowTrajectoryCommand(DriveSubsystem drivetrain, NavigationSubsystem navigation, Trajectory trajectory) {
+        this.drivetrain = drivetrain;
+        this.navigation = navigation;
+        this.trajectory = trajectory;
+        this.controller = new RamseteController(AutonomousConstants.RAMSETE_B, AutonomousConstants.RAMSETE_ZETA);
+        this.kinematics = new DifferentialDriveKinematics(DriveConstants.TRACK_WIDTH_METERS);
+
+        addRequirements(drivetrain);
+    }
+
+    @Override
+    public void initialize() {
+        // Measure the path from wherever the robot is starting
+        this.navigation.resetPose(this.trajectory.getStates().get(0).poseMeters);
+        this.startTime = Clock.now();
+    }
+
+    @Override
+    public void execute() {
+        Trajectory.State goal = this.trajectory.sample(Clock.now() - this.startTime);
+
+        ChassisSpeeds speeds = this.controller.calculate(this.navigation.getPose(), goal);
+        DifferentialDriveWheelSpeeds wheelSpeeds = this.kinematics.toWheelSpeeds(speeds);
+
+        this.drivetrain.drive(DriveSubsystem.Type.VELOCITY, wheelSpeeds.leftMetersPerSecond,
+                wheelSpeeds.rightMetersPerSecond);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return Clock.now() - this.startTime >= this.trajectory.getTotalTimeSeconds();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        this.drivetrain.drive(DriveSubsystem.Type.RHINO, 0.0, 0.0);
+    }
+}
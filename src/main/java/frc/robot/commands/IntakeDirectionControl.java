@@ -8,30 +8,31 @@
 package frc.robot.commands;
 
 import edu.wpi.first.wpilibj2.command.CommandBase;
-import frc.robot.subsystems.IntakeSubsystem;
+import frc.robot.subsystems.SuperstructureSubsystem;
 
 public class IntakeDirectionControl extends CommandBase {
-  IntakeSubsystem m_intake;
+  SuperstructureSubsystem m_superstructure;
 
   //true is full speed forward, false is full speed reverse
   boolean speedDirection; 
   /**
    * Creates a new IntakeDirectionControl.
    */
-  public IntakeDirectionControl(IntakeSubsystem subsystem, boolean direction) {
-    m_intake = subsystem;
+  public IntakeDirectionControl(SuperstructureSubsystem subsystem, boolean direction) {
+    m_superstructure = subsystem;
     speedDirection = direction;
-    addRequirements(m_intake);
+    addRequirements(m_superstructure);
     // Use addRequirements() here to declare subsystem dependencies.
   }
 
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
+    // The superstructure stops taking balls in once the serializer is full
     if(speedDirection){
-      this.m_intake.runIntake(1.0);
+      this.m_superstructure.setGoal(SuperstructureSubsystem.Goal.INTAKE);
     }else{
-      this.m_intake.runIntake(-1.0);
+      this.m_superstructure.setGoal(SuperstructureSubsystem.Goal.EJECT);
     }
   }
 
@@ -43,7 +44,7 @@ public class IntakeDirectionControl extends CommandBase {
   // Called once the command ends or is interrupted.
   @Override
   public void end(boolean interrupted) {
-    this.m_intake.runIntake(0.0);
+    this.m_superstructure.setGoal(SuperstructureSubsystem.Goal.IDLE);
   }
 
   // Returns true when the command should end.
@@ -53,7 +54,7 @@ public class IntakeDirectionControl extends CommandBase {
   }
 
   public void reverseIntake(){
-    this.m_intake.runIntake(0.0);
+    this.m_superstructure.setGoal(SuperstructureSubsystem.Goal.IDLE);
     speedDirection = !speedDirection;
   }
 }
@@ -8,65 +8,44 @@
 package frc.robot.commands;
 
 import edu.wpi.first.wpilibj2.command.CommandBase;
-import frc.robot.subsystems.LauncherSubsystem;
-import frc.robot.subsystems.SerializerSubsystem;
+import frc.robot.Constants.LauncherConstants;
+import frc.robot.common.Clock;
+import frc.robot.subsystems.SuperstructureSubsystem;
 
 public class LaunchAllCommand extends CommandBase {
-  private SerializerSubsystem serializer;
-  private LauncherSubsystem launcher;
-  private int nFramesRun;
+  private SuperstructureSubsystem superstructure;
+
+  /* The time at which the command started. */
+  private double startTime;
 
   /**
-   * Creates a new LaunchAllCommand.
+   * Creates a new LaunchAllCommand, which has the superstructure launch every
+   * ball in the serializer.
    */
-  public LaunchAllCommand(SerializerSubsystem serializer1, LauncherSubsystem launcher1) {
+  public LaunchAllCommand(SuperstructureSubsystem superstructure1) {
     // Use addRequirements() here to declare subsystem dependencies.
-    this.serializer = serializer1;
-    this.launcher = launcher1;
-    this.nFramesRun = 0;
-    addRequirements(serializer, launcher);
+    this.superstructure = superstructure1;
+    addRequirements(superstructure);
   }
 
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
-    this.nFramesRun = 0;
-  }
-
-  // Called every time the scheduler runs while the command is scheduled.
-  @Override
-  public void execute() {
-    this.launcher.startLauncher();
-
-    if (this.nFramesRun > 50) {
-      this.launcher.startRollers();
-      this.serializer.runSerializer();
-    }
-
-    this.nFramesRun++;
-
-    // while (this.serializer.ballCount != 0) {
-    //   this.launcher.stopRollers();
-    //   while (this.launcher.launcherMotor.getSelectedSensorVelocity() !=  Constants.LAUNCHER_VELOCITY_MS) {
-    //     Timer.delay(0.01); //check
-    //   }
-    //   this.launcher.startRollers();
-    //   Timer.delay(0.2); //check
-    // }
- 
+    this.startTime = Clock.now();
+    this.superstructure.setGoal(SuperstructureSubsystem.Goal.LAUNCH);
   }
 
   // Called once the command ends or is interrupted.
   @Override
   public void end(boolean interrupted) {
-    this.launcher.stopRollers();
-    this.launcher.stopLauncher();
-    this.nFramesRun = 0;
+    this.superstructure.setGoal(SuperstructureSubsystem.Goal.IDLE);
   }
 
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
-     return this.nFramesRun > 500;
+    // The superstructure goes back to idle once the serializer is empty
+    return this.superstructure.getGoal() != SuperstructureSubsystem.Goal.LAUNCH
+        || Clock.now() - this.startTime > LauncherConstants.LAUNCH_TIMEOUT_SECONDS;
   }
 }
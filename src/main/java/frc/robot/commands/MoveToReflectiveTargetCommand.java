@@ -1,18 +1,21 @@
 package frc.robot.commands;
 
+import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
-import java.util.HashMap;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.lang.Comparable;
+import java.util.function.Supplier;
 
 import edu.wpi.first.wpilibj.Preferences;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants;
+import frc.robot.common.Clock;
+import frc.robot.common.ControlLoop;
+import frc.robot.common.Filters;
 import frc.robot.common.Patterns;
+import frc.robot.common.Preferences.Group;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.VisionSubsystem;
 import frc.robot.subsystems.DriveSubsystem.Type;
+import frc.robot.subsystems.VisionSubsystem.VisionFrame;
 
 /**
  * Moves the robot to a reflective target, within a specified distance from the
@@ -31,7 +34,22 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
     private final Configuration cfg;
 
     /* The state of the command. This includes all historical data. */
-    private State state;
+    private final State state;
+
+    /* A reusable buffer for the raw offsets read from the limelight on each frame. */
+    private final double[] frame;
+
+    /* The sequence number of the last limelight frame put into the state. */
+    private long lastFrameSequence;
+
+    /* Turns the robot towards the target from the control loop. */
+    private final VisionTurn turn;
+
+    /* A reusable buffer for the turn's setpoint. */
+    private final double[] turnSetpoint;
+
+    /* Whether the turn is armed. */
+    private boolean turning;
 
     /**
      * Axis represents a generic limelight vision axis.
@@ -40,17 +58,83 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
         X, Y, Z
     }
 
+    /* Each of the axes, in the order that their offsets are stored. */
+    private static final Axis[] AXES = Axis.values();
+
+    /**
+     * VisionTurn spins the robot towards the target's heading from the control
+     * loop, reading the gyro on every run rather than once per robot loop. It
+     * only drives while armed.
+     */
+    static class VisionTurn implements ControlLoop.Controller {
+        /* The drivetrain being turned. */
+        private final DriveSubsystem drivetrain;
+
+        /*
+         * Whether the turn is armed, the heading of the target, the gain at full
+         * offset, the minimum gain, and kChange. Written by the command.
+         */
+        final ControlLoop.Mailbox setpoint = new ControlLoop.Mailbox(5);
+
+        VisionTurn(DriveSubsystem drivetrain) {
+            this.drivetrain = drivetrain;
+        }
+
+        @Override
+        public void update(double timestamp) {
+            double[] values = this.setpoint.take();
+            if (values[0] == 0.0) {
+                return;
+            }
+
+            // Calculate the gain with the x offset, as of the latest heading
+            double offset = values[1] - this.drivetrain.getContinuousHeading();
+            double gain = values[2] * normalizeOffset(offset, Axis.X, values[4]);
+            gain += gain < 0 ? -values[3] : values[3];
+
+            synchronized (this.drivetrain) {
+                // The command may have stopped turning since the setpoint was read
+                if (this.setpoint.hasNew()) {
+                    return;
+                }
+
+                // Spin in one spot using the provided gain variable
+                this.drivetrain.drive(Type.RHINO, -gain, gain);
+            }
+        }
+    }
+
     /**
      * State represents the current state of the command.
      *
      * @author Dowland Aiello
      **/
-    private static class State {
-        /* The offsets on each axis from the target. */
-        ArrayList<Entry<Double>> targetOffsets;
+    static class State {
+        /*
+         * The estimated offsets on each axis from the target. Rather than the raw X
+         * offset, the X estimator tracks the gyro heading of the target, which doesn't
+         * change as the robot turns towards it.
+         */
+        private Filters.Estimator[] targetOffsets;
+
+        /* The continuous heading of the robot as of the latest run of the command. */
+        private double heading;
+
+        /* The FPGA time of the latest run of the command, in seconds. */
+        private double timestamp;
+
+        /*
+         * Whether the Z estimator tracks the distance to the target (in meters) rather
+         * than the target's area, and the distance that the command drives to.
+         */
+        private boolean zUsesDistance;
+        private double targetDistance;
 
         /* Whether or not a target is present in the camera's field of view. */
-        Entry<Boolean> targetPresence;
+        private final Filters.Mode targetPresence;
+
+        /* A reusable buffer for the filtered offsets returned by getOffsets(). */
+        private final double[] offsets;
 
         /* The number of frames until the state will restart. */
         private int maxFrames;
@@ -82,19 +166,43 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
          * @param maxFrames the maximum number of frames until the state will be reset
          **/
         public State(int maxFrames) {
-            // Make a new array to store historical offset data in
-            this.targetOffsets = new ArrayList<Entry<Double>>() {
-                private static final long serialVersionUID = 1L;
-
-                {
-                    add(new Entry<Double>(Entry.Type.AVERAGE_ROTATIONAL_OFFSET));
-                    add(new Entry<Double>(Entry.Type.AVERAGE_Y_OFFSET));
-                    add(new Entry<Double>(Entry.Type.AVERAGE_ZED_DISTANCE_OFFSET));
-                }
-            };
-
-            this.targetPresence = new Entry<Boolean>(Entry.Type.AVERAGE_HAS_TARGET);
+            // Each filter holds one more frame than maxFrames, since the oldest frame is
+            // only evicted once we've gone past the max number of frames
+            this.targetOffsets = new Filters.Estimator[] { new Filters.Median(maxFrames + 1),
+                    new Filters.Median(maxFrames + 1), new Filters.Median(maxFrames + 1) };
+            this.targetPresence = new Filters.Mode(maxFrames + 1);
+            this.offsets = new double[this.targetOffsets.length];
             this.maxFrames = maxFrames;
+            this.reset();
+        }
+
+        /**
+         * Replaces the estimators used for each of the offsets with the ones selected
+         * by the given configuration. This clears the state.
+         *
+         * @param cfg the configuration of the command
+         */
+        public void configure(Configuration cfg) {
+            for (int i = 0; i < this.targetOffsets.length; i++) {
+                this.targetOffsets[i] = cfg.newEstimator(i, this.maxFrames + 1);
+            }
+
+            this.zUsesDistance = cfg.usesDistanceForZ();
+            this.targetDistance = cfg.getTargetDistance();
+            this.reset();
+        }
+
+        /**
+         * Clears all of the historical data contained in the state.
+         */
+        public void reset() {
+            for (Filters.Estimator entry : this.targetOffsets) {
+                entry.reset();
+            }
+
+            this.targetPresence.reset();
+            this.heading = 0.0;
+            this.timestamp = 0.0;
             this.currentFrame = 0;
             this.frameInSession = 0;
             this.nCorrectionlessFrames = 0;
@@ -102,66 +210,102 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
             this.hasInitialHeading = false;
         }
 
+        /**
+         * Updates the current heading of the robot, against which the target heading
+         * is compared, and the time at which the offsets are estimated.
+         *
+         * @param heading   the current continuous heading of the robot, in degrees
+         * @param timestamp the current FPGA time, in seconds
+         */
+        public void putHeading(double heading, double timestamp) {
+            this.heading = heading;
+            this.timestamp = timestamp;
+        }
+
         /**
          * Inserts the given offsets into the state's history.
          *
-         * @param offsets the offset values to use
+         * @param offsets   the target heading, the Y offset, and the target's area (or
+         *                  distance, if the Z axis uses distance)
+         * @param hasTarget whether or not the offsets were measured from a target
+         * @param timestamp the time at which the offsets were measured, in seconds
          **/
-        public void putValues(double[] offsets, boolean hasTarget) {
-            // If we're past the max number of frames, reset the state
+        public void putValues(double[] offsets, boolean hasTarget, double timestamp) {
+            // If we're past the max number of frames, the oldest frame will be evicted
+            // from each of the filters as the new one is pushed
             if (this.currentFrame > this.maxFrames) {
                 // Reset the index of the current frame so that we can start building off a new
                 // head
                 this.currentFrame--;
                 this.frameInSession = 0;
-
-                // Pop an entry from the presence state entry
-                this.pop();
             }
 
             // Increment the current frame
             this.currentFrame++;
             this.frameInSession++;
 
-            // Iterate through each of the historical target offset values
-            for (int i = 0; i < this.targetOffsets.size() && i < offsets.length; i++) {
-                // Insert each of the offset values
-                this.targetOffsets.get(i).push(offsets[i]);
+            this.targetPresence.push(hasTarget);
+
+            // Without a target, the limelight's offsets are meaningless
+            if (!hasTarget) {
+                return;
             }
 
-            this.targetPresence.push(hasTarget);
+            // Iterate through each of the target offset estimators
+            for (int i = 0; i < this.targetOffsets.length && i < offsets.length; i++) {
+                // Insert each of the offset values
+                this.targetOffsets[i].update(offsets[i], timestamp);
+            }
         }
 
         /**
-         * Pops an individual historical value entry from each of the data sources in
-         * the state.
-         */
-        private void pop() {
-            // Pop a single entry value from each of the target offsets
-            for (Entry<Double> entry : this.targetOffsets) {
-                // Pop a historical value from the botom of the queue
-                double value = entry.historicalValues.remove(0);
-
-                // Subtract one from the corresponding frequency
-                entry.frequencies.put(value, entry.frequencies.get(value) - 1);
+         * Gets the offset values contained inside the state. The returned array is
+         * reused between calls.
+         *
+         * @return the offset values contained inside the state
+         **/
+        public double[] getOffsets() {
+            for (int i = 0; i < this.offsets.length; i++) {
+                this.offsets[i] = this.getOffset(i);
             }
 
-            // Pop a historical value from the bottom of the target present queue
-            boolean present = this.targetPresence.historicalValues.remove(0);
+            return this.offsets;
+        }
 
-            // Remove the value from the presence frequencies hashmap so that it doesn't
-            // contaminate the overall average anymore
-            this.targetPresence.frequencies.put(present, this.targetPresence.frequencies.get(present) - 1);
+        /**
+         * Gets the filtered heading of the target, which the robot must turn to in
+         * order to face it.
+         *
+         * @return the target's continuous heading, in degrees
+         */
+        public double getTargetHeading() {
+            return this.targetOffsets[0].get(this.timestamp);
         }
 
         /**
-         * Gets the offset values contained inside the state.
+         * Gets the filtered offset along a single axis. The X offset is the number of
+         * degrees that the robot must still turn to face the target. The Z offset is
+         * positive when the robot is too far from the target, and is measured in
+         * units of target area, even when it is estimated from distance.
          *
-         * @return the offset values contained inside the state
-         **/
-        public double[] getOffsets() {
-            return new double[] { this.targetOffsets.get(0).getAverage(), this.targetOffsets.get(1).getAverage(),
-                    this.targetOffsets.get(2).getAverage() };
+         * @param axis the index of the axis
+         * @return the filtered offset along the axis
+         */
+        private double getOffset(int axis) {
+            double value = this.targetOffsets[axis].get(this.timestamp);
+
+            switch (axis) {
+            case 0:
+                return value - this.heading;
+            case 2:
+                // Scale the distance error so that it's on the same scale as the area error
+                return this.zUsesDistance
+                        ? (value - this.targetDistance) / this.targetDistance
+                                * Constants.VisionConstants.DEFAULT_BOUNDS[2]
+                        : Constants.VisionConstants.DEFAULT_BOUNDS[2] - value;
+            default:
+                return value;
+            }
         }
 
         /**
@@ -170,7 +314,7 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
          * @return whether or not a target exists in the camera's field of view
          **/
         public boolean hasTarget() {
-            return !(this.frameInSession > this.maxFrames * 0.5 && !this.targetPresence.getMode());
+            return !(this.frameInSession > this.maxFrames * 0.5 && !this.targetPresence.get());
         }
 
         /**
@@ -207,121 +351,14 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
         public boolean needsCorrectionOnAxis(Axis axis, double errorTolerance) {
             switch (axis) {
             case X:
-                return Math.abs(this.targetOffsets.get(0).getAverage())
+                return Math.abs(this.getOffset(0))
                         / Constants.VisionConstants.DEFAULT_BOUNDS[0] > errorTolerance;
             case Y:
-                return Math.abs(this.targetOffsets.get(1).getAverage())
+                return Math.abs(this.getOffset(1))
                         / Constants.VisionConstants.DEFAULT_BOUNDS[1] > errorTolerance;
             default:
-                return Math.abs(
-                        Constants.VisionConstants.DEFAULT_BOUNDS[2] - this.targetOffsets.get(2).getAverage()) > Math
-                                .abs(Constants.VisionConstants.DEFAULT_BOUNDS[2]
-                                        - ((1 + errorTolerance) * Constants.VisionConstants.DEFAULT_BOUNDS[2]));
-            }
-        }
-
-        /**
-         * Entry represents a generic state entry for the command. This used to
-         * represent historical values for the command.
-         **/
-        private static class Entry<T extends Comparable<T>> {
-            /* The type of the entry. */
-            private Type entryType;
-
-            /* Individual entries inside the entry at each frame. */
-            private ArrayList<T> historicalValues;
-
-            /* The number of times that each value occurs in the Entry. */
-            private HashMap<T, Integer> frequencies;
-
-            /* The most often occurring value in the historical values of the entry. */
-            private T mode;
-
-            /**
-             * Initializes a new Entry.
-             *
-             * @param type the type of entry
-             **/
-            public Entry(Type type) {
-                this.entryType = type;
-                this.historicalValues = new ArrayList<>();
-                this.frequencies = new HashMap<>();
-                this.mode = null;
-            }
-
-            /**
-             * Entry represents a generic type of entry stored in the command's state.
-             **/
-            static enum Type {
-                /* Whether or not a target has been recorded in more than half of the frames. */
-                AVERAGE_HAS_TARGET,
-
-                /* The average offset along the X axis over the specified number of frames. */
-                AVERAGE_ROTATIONAL_OFFSET,
-
-                /* The average offset along the Z axis over the specified number of frames. */
-                AVERAGE_ZED_DISTANCE_OFFSET,
-
-                /* The average offset along the Y axis over the specified number of frames. */
-                AVERAGE_Y_OFFSET,
-            }
-
-            /**
-             * Gets the mode of the historical values stored in the entry.
-             *
-             * @return the most often occurring value stored in the entry
-             **/
-            private T getMode() {
-                return this.mode;
-            }
-
-            /**
-             * Gets the median of the historical values stored in the entry.
-             *
-             * @return the median value stored in the entry
-             **/
-            private T getMedian() {
-                // Make sure that sorting the historical values won't change it
-                ArrayList<T> history = new ArrayList<T>(Collections.unmodifiableList(this.historicalValues));
-
-                // Sort each of the values contained in the set of historical values
-                Collections.sort(history);
-
-                // Return the middle value from the sorted historical values list
-                return history.get(this.historicalValues.size() / 2);
-            }
-
-            /**
-             * Gets the average of the historical values stored in the entry through the
-             * respective average mode.
-             *
-             * @return the mean of the historical values stored in the entry
-             **/
-            public T getAverage() {
-                switch (this.entryType) {
-                case AVERAGE_HAS_TARGET:
-                    return this.getMode();
-                default:
-                    return this.getMedian();
-                }
-            }
-
-            /**
-             * Pushes a value onto the state entry.
-             *
-             * @param value the value that will be pushed onto the entry
-             **/
-            public void push(T value) {
-                // Increment the frequency for the value provided
-                this.frequencies.put(value, this.frequencies.getOrDefault(value, 0) + 1);
-
-                // Add the value into the set of historical values contained in the state entry
-                this.historicalValues.add(value);
-
-                // Recalculate the mode for the entry
-                if (this.mode == null || this.frequencies.get(value) > this.frequencies.getOrDefault(mode, 0)) {
-                    this.mode = value;
-                }
+                return Math.abs(this.getOffset(2)) > Math.abs(Constants.VisionConstants.DEFAULT_BOUNDS[2]
+                        - ((1 + errorTolerance) * Constants.VisionConstants.DEFAULT_BOUNDS[2]));
             }
         }
     }
@@ -367,6 +404,24 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
         /* The set of axes that are supported by the vision command. */
         boolean[] supportedAxes;
 
+        /* The kind of estimator used to smooth the offsets from the limelight. */
+        Supplier<Filters.EstimatorType> estimatorType;
+
+        /* The gains of the alpha-beta estimator, if it is used. */
+        DoubleSupplier alpha, beta;
+
+        /*
+         * The measurement noise and rate noise of the Kalman estimator, if it is used.
+         * Both are standard deviations, expressed as fractions of each axis' bounds.
+         */
+        DoubleSupplier kalmanMeasurementDeviation, kalmanAccelerationDeviation;
+
+        /* Whether to correct along the Z axis by distance, rather than by area. */
+        BooleanSupplier zUsesDistance;
+
+        /* The distance from the target to drive to, when correcting by distance. */
+        DoubleSupplier targetDistance;
+
         /**
          * Initializes a new Configuration for the MoveToReflectiveTarget command with
          * the given parameters.
@@ -391,6 +446,17 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
             this.maximumSpeed = maximumSpeed;
             this.maximumForwardSpeed = maximumForwardSpeed;
             this.supportedAxes = new boolean[] { true, true, true };
+
+            // Smooth the offsets with the default estimator
+            this.estimatorType = () -> Constants.VisionConstants.DEFAULT_ESTIMATOR;
+            this.alpha = () -> Constants.VisionConstants.DEFAULT_ALPHA;
+            this.beta = () -> Constants.VisionConstants.DEFAULT_BETA;
+            this.kalmanMeasurementDeviation = () -> Constants.VisionConstants.DEFAULT_KALMAN_MEASUREMENT_DEVIATION;
+            this.kalmanAccelerationDeviation = () -> Constants.VisionConstants.DEFAULT_KALMAN_ACCELERATION_DEVIATION;
+
+            // Correct along the Z axis by target area, unless told otherwise
+            this.zUsesDistance = () -> Constants.VisionConstants.DEFAULT_Z_USES_DISTANCE;
+            this.targetDistance = () -> Constants.VisionConstants.DEFAULT_TARGET_DISTANCE_METERS;
         }
 
         /**
@@ -415,30 +481,37 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
          *              configure the configurable class from
          */
         public Configuration applyPreferences(Preferences prefs) {
-            // Initialize a default-value vision subsystem so that we can generate a bunch
-            // of preference keys from which
-            // we will extract the information for the configuration of the command
-            VisionSubsystem preferencesBuilder = VisionSubsystem.getDefault();
+            // The command's preferences are kept with the vision subsystem's
+            Group preferencesBuilder = VisionSubsystem.PREFERENCES;
 
             // Get a default instane of the command config so that we can fallback to some
             // values
             Configuration defaultConfig = Configuration.getDefault();
 
             // Use all default values for each of the configuration fields. Or, if we can
-            // get override values from the preferences instance, use those.
-            this.kP = () -> prefs.getDouble(preferencesBuilder.preferencesKey("kP").toString(),
-                    defaultConfig.kP.getAsDouble());
-            this.kI = () -> prefs.getDouble(preferencesBuilder.preferencesKey("kI").toString(),
-                    defaultConfig.kI.getAsDouble());
-            this.kChange = () -> prefs.getDouble(preferencesBuilder.preferencesKey("kChange").toString(),
-                    defaultConfig.kChange.getAsDouble());
-            this.errorTolerance = () -> prefs.getDouble(preferencesBuilder.preferencesKey("errorTolerance").toString(),
-                    defaultConfig.errorTolerance.getAsDouble());
-            this.maximumSpeed = () -> prefs.getDouble(preferencesBuilder.preferencesKey("maximumSpeed").toString(),
-                    defaultConfig.maximumSpeed.getAsDouble());
-            this.maximumForwardSpeed = () -> prefs.getDouble(
-                    preferencesBuilder.preferencesKey("maximumForwardSpeed").toString(),
-                    defaultConfig.maximumForwardSpeed.getAsDouble());
+            // get override values from the preferences instance, use those. Each handle
+            // keeps its value up to date, so reading it is just a field read.
+            this.kP = preferencesBuilder.doublePref("kP", defaultConfig.kP.getAsDouble(), 0.0, 10.0);
+            this.kI = preferencesBuilder.doublePref("kI", defaultConfig.kI.getAsDouble(), 0.0, 1.0);
+            this.kChange = preferencesBuilder.doublePref("kChange", defaultConfig.kChange.getAsDouble(), 0.0, 2.0);
+            this.errorTolerance = preferencesBuilder.doublePref("errorTolerance",
+                    defaultConfig.errorTolerance.getAsDouble(), 0.0, 1.0);
+            this.maximumSpeed = preferencesBuilder.doublePref("maximumSpeed", defaultConfig.maximumSpeed.getAsDouble(),
+                    0.0, 1.0);
+            this.maximumForwardSpeed = preferencesBuilder.doublePref("maximumForwardSpeed",
+                    defaultConfig.maximumForwardSpeed.getAsDouble(), 0.0, 1.0);
+            this.estimatorType = preferencesBuilder.parsedPref("estimator",
+                    defaultConfig.estimatorType.get().toString(), Filters.EstimatorType::fromString);
+            this.alpha = preferencesBuilder.doublePref("alpha", defaultConfig.alpha.getAsDouble(), 0.0, 1.0);
+            this.beta = preferencesBuilder.doublePref("beta", defaultConfig.beta.getAsDouble(), 0.0, 1.0);
+            this.kalmanMeasurementDeviation = preferencesBuilder.doublePref("kalmanMeasurementDeviation",
+                    defaultConfig.kalmanMeasurementDeviation.getAsDouble(), 0.0, 10.0);
+            this.kalmanAccelerationDeviation = preferencesBuilder.doublePref("kalmanAccelerationDeviation",
+                    defaultConfig.kalmanAccelerationDeviation.getAsDouble(), 0.0, 10.0);
+            this.zUsesDistance = preferencesBuilder.booleanPref("zUsesDistance",
+                    defaultConfig.zUsesDistance.getAsBoolean());
+            this.targetDistance = preferencesBuilder.doublePref("targetDistance",
+                    defaultConfig.targetDistance.getAsDouble(), 0.0, 15.0);
 
             return this;
         }
@@ -473,6 +546,20 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
             return this;
         }
 
+        /**
+         * Uses the given kind of estimator to smooth the offsets from the limelight,
+         * regardless of the robot's preferences. This changes the configuration in
+         * place.
+         *
+         * @param type the kind of estimator to use
+         * @return this configuration, for chaining
+         */
+        public Configuration useEstimator(Filters.EstimatorType type) {
+            this.estimatorType = () -> type;
+
+            return this;
+        }
+
         /**
          * Gets the kP of the configuration.
          *
@@ -526,6 +613,50 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
             return this.maximumForwardSpeed.getAsDouble();
         }
 
+        /**
+         * Whether the command corrects along the Z axis using the estimated distance to
+         * the target, rather than the target's area.
+         *
+         * @return whether or not the Z axis uses distance
+         */
+        public boolean usesDistanceForZ() {
+            return this.zUsesDistance.getAsBoolean();
+        }
+
+        /**
+         * Gets the distance from the target that the command drives to, when
+         * correcting by distance.
+         *
+         * @return the target distance, in meters
+         */
+        public double getTargetDistance() {
+            return this.targetDistance.getAsDouble();
+        }
+
+        /**
+         * Builds a new estimator for the offsets along the given axis, of the kind
+         * selected by the configuration.
+         *
+         * @param axis   the index of the axis (X, Y, or Z) that will be estimated
+         * @param window the number of frames that a median estimator is taken over
+         * @return the new estimator
+         */
+        public Filters.Estimator newEstimator(int axis, int window) {
+            // The Kalman filter's noise is relative to the size of the axis
+            double bound = axis == 2 && this.usesDistanceForZ() ? this.getTargetDistance()
+                    : Constants.VisionConstants.DEFAULT_BOUNDS[axis];
+
+            switch (this.estimatorType.get()) {
+            case ALPHA_BETA:
+                return new Filters.AlphaBeta(this.alpha.getAsDouble(), this.beta.getAsDouble());
+            case KALMAN:
+                return new Filters.Kalman(this.kalmanMeasurementDeviation.getAsDouble() * bound,
+                        this.kalmanAccelerationDeviation.getAsDouble() * bound);
+            default:
+                return new Filters.Median(window);
+            }
+        }
+
         /**
          * Gets the kChange value for this command's config.
          *
@@ -546,6 +677,9 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
         this.m_vision = vision;
         this.cfg = cfg;
         this.state = new State(Constants.VisionConstants.TARGETLESS_FRAMES_TO_STOP);
+        this.frame = new double[3];
+        this.turn = new VisionTurn(drivetrain);
+        this.turnSetpoint = new double[5];
 
         // Keep the limelight's light off until the command is scheduled to run
         this.m_vision.disableLimelight();
@@ -559,6 +693,15 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
     public void initialize() {
         // Turn the limelight light on once the command is scheduled
         this.m_vision.enableLimelight();
+
+        // Pick up any change to the preferred estimator
+        this.state.configure(this.cfg);
+
+        // Only turn from the control loop while the command runs
+        ControlLoop.register(this.turn);
+
+        // Don't reuse a frame that was captured before the command started
+        this.lastFrameSequence = this.m_vision.getLatestFrame().sequence();
     }
 
     /**
@@ -570,12 +713,13 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
      *         boundary
      */
     private double[] normalizeOffsets(double[] offsets) {
-        Axis[] axes = { Axis.X, Axis.Y, Axis.Z };
+        // Look up kChange once, rather than once per axis
+        double kChange = this.cfg.getkChange();
 
         // Normalize each of the provided offsets
-        for (int i = 0; i < offsets.length && i < axes.length; i++) {
+        for (int i = 0; i < offsets.length && i < AXES.length; i++) {
             // Normalize the offset
-            offsets[i] = this.normalizeOffset(offsets[i], axes[i]);
+            offsets[i] = normalizeOffset(offsets[i], AXES[i], kChange);
         }
 
         return offsets;
@@ -586,14 +730,16 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
      * center of the limelight view, in conjunction with consideration to the
      * value's status as a negative or positive value.
      */
-    private double normalizeOffset(double offset, Axis axis) {
+    static double normalizeOffset(double offset, Axis axis, double kChange) {
         // The original offset value
         double original = offset;
 
         // Convert the raw offset to a percentage of the boundary definition
         switch (axis) {
         case X:
-            offset = Math.abs(offset) / Constants.VisionConstants.DEFAULT_BOUNDS[0];
+            // Since the X offset is measured against the gyro, it can leave the camera's
+            // field of view; never turn harder than for a target at the edge of the view
+            offset = Math.min(Math.abs(offset) / Constants.VisionConstants.DEFAULT_BOUNDS[0], 1.0);
 
             break;
         case Y:
@@ -601,7 +747,7 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
 
             break;
         case Z:
-            offset = Constants.VisionConstants.DEFAULT_BOUNDS[2] - offset;
+            // The Z offset is already measured from the target area
             original = offset;
 
             break;
@@ -610,7 +756,7 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
         // If the offset is negative, compare it against the negative max number of
         // degrees. Otherwise, compare it against
         // the positive version.
-        return original < 0 ? -1 * Math.pow(Math.abs(offset), this.cfg.getkChange()) : Math.pow(offset, this.cfg.getkChange());
+        return original < 0 ? -1 * Math.pow(Math.abs(offset), kChange) : Math.pow(offset, kChange);
     }
 
     /**
@@ -618,9 +764,27 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
      */
     @Override
     public void execute() {
-        // Update the state of the command
-        this.state.putValues(new double[] { this.m_vision.tx(), this.m_vision.ty(), this.m_vision.ta() },
-                this.m_vision.hasTarget());
+        // Take a single snapshot of the limelight, so that every offset comes from the
+        // same camera frame
+        VisionFrame latest = this.m_vision.getLatestFrame();
+
+        // Close the loop on the gyro between camera frames
+        this.state.putHeading(this.m_drivetrain.getContinuousHeading(), Clock.now());
+
+        // Update the state of the command, unless we've already seen this frame. The
+        // limelight stops publishing once it has lost the target, so a targetless
+        // frame is counted on every run in order for the command to stop.
+        if (latest.sequence() != this.lastFrameSequence || !latest.hasTarget()) {
+            this.lastFrameSequence = latest.sequence();
+
+            // The frame shows where the target was relative to the robot when the image
+            // was captured, so turn it into a heading using where the robot was facing
+            // at that time
+            this.frame[0] = this.m_drivetrain.getHeadingAt(latest.timestamp()) + latest.tx();
+            this.frame[1] = latest.ty();
+            this.frame[2] = this.state.zUsesDistance ? latest.distance() : latest.ta();
+            this.state.putValues(this.frame, latest.hasTarget(), latest.timestamp());
+        }
 
         // Get each of the offset values from the limelight
         double[] offsets = this.normalizeOffsets(this.state.getOffsets());
@@ -630,6 +794,7 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
 
         // If we don't have a target to lock on to, we can stop execution
         if (!hasTarget) {
+            this.stopTurning();
             return;
         }
 
@@ -645,14 +810,23 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
             // gain += gain < 0 ? -this.cfg.getKi() : this.cfg.getKi();
 
             // Move forward and back using the gain variable
+            this.stopTurning();
             this.m_drivetrain.drive(Type.RHINO, new double[] { -gain, -gain });
         } else if (this.state.needsCorrectionOnAxis(Axis.X, tolerance) && this.cfg.supportedAxes[0]) {
-            // Calculate the gain with the x offset
-            double gain = this.cfg.getKp() * offsets[0] * this.cfg.getMaximumSpeed();
-            gain += gain < 0 ? -this.cfg.getKi() : this.cfg.getKi();
-
-            // Spin in one spot using the provided gain variable
-            this.m_drivetrain.drive(Type.RHINO, new double[] { -gain, gain });
+            // The target's heading only changes with each frame, so the control loop can
+            // turn towards it between frames
+            this.turnSetpoint[0] = 1.0;
+            this.turnSetpoint[1] = this.state.getTargetHeading();
+            this.turnSetpoint[2] = this.cfg.getKp() * this.cfg.getMaximumSpeed();
+            this.turnSetpoint[3] = this.cfg.getKi();
+            this.turnSetpoint[4] = this.cfg.getkChange();
+            this.turn.setpoint.post(this.turnSetpoint);
+            this.turning = true;
+
+            // Without the control loop, turn from here instead
+            if (!ControlLoop.isRunning()) {
+                this.turn.update(Clock.now());
+            }
         } else if (this.state.needsCorrectionOnAxis(Axis.Y, this.cfg.getErrorTolerance())
                 && this.state.hasInitialHeading && this.cfg.supportedAxes[2]) {
             // Calculate the gain with the y offset
@@ -660,10 +834,26 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
             gain += gain < 0 ? -this.cfg.getKi() : this.cfg.getKi();
 
             // Move forward and back using the gain variable
+            this.stopTurning();
             this.m_drivetrain.drive(Type.RHINO, new double[] { gain, gain });
+        } else {
+            this.stopTurning();
         }
     }
 
+    /**
+     * Disarms the turn, if it's armed, so that the control loop stops driving.
+     */
+    private void stopTurning() {
+        if (!this.turning) {
+            return;
+        }
+
+        this.turnSetpoint[0] = 0.0;
+        this.turn.setpoint.post(this.turnSetpoint);
+        this.turning = false;
+    }
+
     /**
      * Returns whether or not the command has finished executing.
      *
@@ -685,9 +875,11 @@ public class MoveToReflectiveTargetCommand extends CommandBase {
      */
     @Override
     public void end(boolean interrupted) {
+        this.stopTurning();
+        ControlLoop.unregister(this.turn);
+
         // Reset the command's state
-        this.state = new State(Constants.VisionConstants.TARGETLESS_FRAMES_TO_STOP);
-        this.state.hasInitialHeading = false;
+        this.state.reset();
 
         // Once the command has terminated, disable the limelight's light
         this.m_vision.disableLimelight();
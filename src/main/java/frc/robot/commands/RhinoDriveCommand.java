@@ -59,7 +59,7 @@ public class RhinoDriveCommand extends CommandBase implements Patterns.Preferenc
     public RhinoDriveCommand applyPreferences(Preferences prefs) {
         // Since we have a preferences instance to use, we can get the maximum speed
         // from there
-        this.maximumSpeed = () -> prefs.getDouble(this.m_drivetrain.preferencesKey("maximumSpeed").toString(), 1.0);
+        this.maximumSpeed = this.m_drivetrain.doublePref("maximumSpeed", 1.0, 0.0, 1.0);
 
         // Use all of the previously provided configuration variables, aside from the
         // maximum speed
@@ -7,45 +7,176 @@
 
 package frc.robot.commands;
 
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.controller.PIDController;
-import edu.wpi.first.wpilibj2.command.PIDCommand;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.ControlConstants;
 import frc.robot.Constants.DriveConstants;
+import frc.robot.common.Clock;
+import frc.robot.common.ControlLoop;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.DriveSubsystem.Type;
 
-// NOTE:  Consider using this command inline, rather than writing a subclass.  For more
-// information, see:
-// https://docs.wpilib.org/en/latest/docs/software/commandbased/convenience-features.html
-public class TurnToRobotAngleCommand extends PIDCommand {
+/**
+ * Turns the robot in place to face the given heading. The heading is held on
+ * the control loop, which reads the gyro several times per robot loop.
+ */
+public class TurnToRobotAngleCommand extends CommandBase {
+    /**
+     * HeadingHold turns the robot to face the heading posted to it, from the
+     * control loop. It only drives while armed.
+     */
+    static class HeadingHold implements ControlLoop.Controller {
+        /* The drivetrain being turned. */
+        private final DriveSubsystem drivetrain;
+
+        /* The controller that the heading is held with. */
+        private final PIDController controller;
+
+        /*
+         * The number of the current turn, or 0 when disarmed, and the heading to hold.
+         * Written by the command.
+         */
+        final ControlLoop.Mailbox setpoint = new ControlLoop.Mailbox(2);
+
+        /* The number of the turn, and whether the robot faces its heading. Written by the hold. */
+        final ControlLoop.Mailbox status = new ControlLoop.Mailbox(2);
+
+        /* A reusable buffer for the status. */
+        private final double[] statusValues = new double[2];
+
+        /* The number of the turn as of the last run. */
+        private double lastTurn;
+
+        /**
+         * Initializes a new HeadingHold.
+         *
+         * @param drivetrain the drivetrain to turn
+         * @param period     the time between each update, in seconds
+         */
+        HeadingHold(DriveSubsystem drivetrain, double period) {
+            this.drivetrain = drivetrain;
+            this.controller = new PIDController(DriveConstants.TURN_P, DriveConstants.TURN_I, DriveConstants.TURN_D,
+                    period);
+
+            // The heading wraps around, and the robot must be still at the heading
+            // before it counts as there
+            this.controller.enableContinuousInput(-180, 180);
+            this.controller.setTolerance(DriveConstants.TURN_TO_TOLERANCE, DriveConstants.TURN_RATE_TOLERANCE);
+        }
+
+        @Override
+        public void update(double timestamp) {
+            double[] values = this.setpoint.take();
+            double turn = values[0];
+
+            // Start over for each new turn, so the last one's error isn't carried over
+            if (turn != this.lastTurn) {
+                this.controller.reset();
+                this.lastTurn = turn;
+            }
+
+            if (turn == 0.0) {
+                return;
+            }
+
+            double output = this.controller.calculate(this.drivetrain.getHeading(), values[1]);
+
+            synchronized (this.drivetrain) {
+                // The command may have let go of the drivetrain since the setpoint was read
+                if (this.setpoint.hasNew()) {
+                    return;
+                }
+
+                // Differential drive takes the rotation first
+                this.drivetrain.drive(Type.DIFFERENTIAL, output, 0);
+            }
+
+            this.statusValues[0] = turn;
+            this.statusValues[1] = this.controller.atSetpoint() ? 1.0 : 0.0;
+            this.status.post(this.statusValues);
+        }
+    }
+
+    /* The drivetrain being turned. */
+    private final DriveSubsystem drivetrain;
+
+    /* The heading to turn to, in degrees. */
+    private final double targetAngleDegrees;
+
+    /* Holds the heading from the control loop. */
+    private final HeadingHold hold;
+
+    /* Holds the heading from the robot loop, for when the control loop isn't running. */
+    private final HeadingHold inlineHold;
+
+    /* The hold that the current turn is using. */
+    private HeadingHold activeHold;
+
+    /* A reusable buffer for the setpoint. */
+    private final double[] setpoint = new double[2];
+
+    /* The number of the current turn, counting up from 1. */
+    private int turn;
+
     /**
      * Creates a new TurnToAngle.
      */
     public TurnToRobotAngleCommand(double targetAngleDegrees, DriveSubsystem driveSubsystem) {
-        super(
-                // The controller that the command will use
-                new PIDController(DriveConstants.TURN_P, DriveConstants.TURN_I, DriveConstants.TURN_D),
-                // Close loop on heading
-                driveSubsystem::getHeading,
-                // Set reference to target
-                targetAngleDegrees,
-                // Pipe output to turn robot
-                output -> driveSubsystem.drive(Type.DIFFERENTIAL, new double[] { 0, output }),
-                // Require the drive
-                driveSubsystem);
-
-        // Set the controller to be continuous (because it is an angle controller)
-        getController().enableContinuousInput(-180, 180);
-        // Set the controller tolerance - the delta tolerance ensures the robot is
-        // stationary at the
-        // setpoint before it is considered as having reached the reference
-        getController().setTolerance(DriveConstants.TURN_TO_TOLERANCE, DriveConstants.TURN_RATE_TOLERANCE);
-        // Use addRequirements() here to declare subsystem dependencies.
-        // Configure additional PID options by calling `getController` here.
+        this.drivetrain = driveSubsystem;
+        this.targetAngleDegrees = targetAngleDegrees;
+        this.hold = new HeadingHold(driveSubsystem, ControlConstants.PERIOD_SECONDS);
+
+        // The inline hold runs once per robot loop, so its gains are tuned to that
+        this.inlineHold = new HeadingHold(driveSubsystem, TimedRobot.kDefaultPeriod);
+        this.activeHold = this.hold;
+
+        addRequirements(driveSubsystem);
+    }
+
+    @Override
+    public void initialize() {
+        // Without the control loop, hold the heading from here instead
+        this.activeHold = ControlLoop.isRunning() ? this.hold : this.inlineHold;
+
+        this.turn++;
+        this.postSetpoint(this.turn);
+
+        // Only hold the heading from the control loop while the command runs
+        if (this.activeHold == this.hold) {
+            ControlLoop.register(this.hold);
+        }
+    }
+
+    @Override
+    public void execute() {
+        if (this.activeHold == this.inlineHold) {
+            this.inlineHold.update(Clock.now());
+        }
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        this.postSetpoint(0);
+        ControlLoop.unregister(this.hold);
+        this.drivetrain.drive(Type.DIFFERENTIAL, 0, 0);
+    }
+
+    /**
+     * Arms the heading hold for the given turn, or disarms it for turn 0.
+     */
+    private void postSetpoint(int turn) {
+        this.setpoint[0] = turn;
+        this.setpoint[1] = this.targetAngleDegrees;
+        this.activeHold.setpoint.post(this.setpoint);
     }
 
     // Returns true when the command should end.
     @Override
     public boolean isFinished() {
-        return getController().atSetpoint();
+        double[] status = this.activeHold.status.take();
+
+        // Ignore the status of an earlier turn
+        return status[0] == this.turn && status[1] != 0.0;
     }
 }
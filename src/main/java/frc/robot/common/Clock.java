@@ -0,0 +1,33 @@
+package frc.robot.common;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Clock is the source of time for code that timestamps sensor data. It reads
+ * the FPGA clock on the robot, and can be replaced in order to replay recorded
+ * data faster than real time.
+ */
+public class Clock {
+    /* The current source of time, in seconds. */
+    private static volatile DoubleSupplier source = Timer::getFPGATimestamp;
+
+    /**
+     * Gets the current time.
+     *
+     * @return the current time, in seconds
+     */
+    public static double now() {
+        return source.getAsDouble();
+    }
+
+    /**
+     * Replaces the source of time. Should only be used off of the robot.
+     *
+     * @param timeSource the new source of time, in seconds
+     */
+    public static void use(DoubleSupplier timeSource) {
+        source = timeSource;
+    }
+}
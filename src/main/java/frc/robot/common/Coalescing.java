@@ -0,0 +1,392 @@
+package frc.robot.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.IMotorController;
+import com.ctre.phoenix.motorcontrol.InvertType;
+import com.ctre.phoenix.motorcontrol.TalonFXInvertType;
+import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
+import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Defines motor controllers that remember what they were last told to do, and
+ * skip sending the same demand, follow or inversion again. Subsystems tend to
+ * set their motors on every loop whether or not anything has changed, and each
+ * of those calls costs a trip through JNI and onto the CAN bus.
+ *
+ * <p>
+ * A coalescing motor controller's last demand isn't guarded on its own, so a
+ * motor that is driven from more than one thread must only be called under its
+ * owner's lock, as DriveSubsystem.drive and SerializerSubsystem.setBelt do.
+ * Otherwise a demand can be wrongly skipped, and never sent.
+ */
+public class Coalescing {
+    /* Every counter, by the name of the subsystem that it counts. */
+    private static final Map<String, Counter> COUNTERS = new LinkedHashMap<>();
+
+    /**
+     * Counter keeps track of how many calls to a subsystem's motor controllers
+     * were sent on to the controllers, and how many were skipped.
+     */
+    public static class Counter {
+        /* The SmartDashboard keys that the counts are published under. */
+        private final String sentKey, suppressedKey;
+
+        /*
+         * The number of calls that were sent, and that were skipped. Counted from both
+         * the robot loop and the control loop.
+         */
+        private final LongAdder sent = new LongAdder(), suppressed = new LongAdder();
+
+        /**
+         * Initializes a new Counter for the given subsystem.
+         *
+         * @param name the name of the subsystem
+         */
+        private Counter(String name) {
+            this.sentKey = "CAN/" + name + "/sent";
+            this.suppressedKey = "CAN/" + name + "/suppressed";
+        }
+
+        /**
+         * Gets the number of calls that were sent on to the motor controllers.
+         *
+         * @return the number of calls sent
+         */
+        public long getSent() {
+            return this.sent.sum();
+        }
+
+        /**
+         * Gets the number of calls that were skipped because nothing had changed.
+         *
+         * @return the number of calls suppressed
+         */
+        public long getSuppressed() {
+            return this.suppressed.sum();
+        }
+    }
+
+    /**
+     * Gets the counter for the given subsystem, creating it if it doesn't exist.
+     *
+     * @param subsystem the name of the subsystem
+     * @return the subsystem's counter
+     */
+    public static synchronized Counter counter(String subsystem) {
+        return COUNTERS.computeIfAbsent(subsystem, Counter::new);
+    }
+
+    /**
+     * Publishes the number of sent and suppressed calls for each subsystem to the
+     * SmartDashboard.
+     */
+    public static synchronized void publish() {
+        for (Counter counter : COUNTERS.values()) {
+            SmartDashboard.putNumber(counter.sentKey, counter.getSent());
+            SmartDashboard.putNumber(counter.suppressedKey, counter.getSuppressed());
+        }
+    }
+
+    /**
+     * State holds the last demand, follow and inversion sent to a motor
+     * controller, and decides whether a new call would change any of them. Not
+     * thread safe; callers must hold the motor's owner's lock.
+     */
+    static class State {
+        /* The counter for the subsystem that the motor controller belongs to. */
+        private final Counter counter;
+
+        /* The last control mode and demands sent. NaN until the first demand. */
+        private ControlMode mode;
+        private DemandType demandType;
+        private double demand0 = Double.NaN, demand1 = Double.NaN;
+
+        /* The motor controller being followed, or null if not following. */
+        private IMotorController master;
+
+        /* The last inversion sent as a boolean, or null if unknown. */
+        private Boolean inverted;
+
+        /*
+         * Whether a call is being passed on to the motor controller, during which any
+         * calls it makes to itself go straight through.
+         */
+        boolean forwarding;
+
+        /**
+         * Initializes a new State counting against the given counter.
+         */
+        State(Counter counter) {
+            this.counter = counter;
+        }
+
+        /**
+         * Records a demand, returning whether it differs from the last one sent.
+         */
+        boolean set(ControlMode mode, double demand0, DemandType demandType, double demand1) {
+            if (mode == this.mode && demand0 == this.demand0 && demandType == this.demandType
+                    && demand1 == this.demand1) {
+                return this.suppress();
+            }
+
+            this.mode = mode;
+            this.demand0 = demand0;
+            this.demandType = demandType;
+            this.demand1 = demand1;
+            this.master = null;
+
+            return this.send();
+        }
+
+        /**
+         * Records a follow, returning whether it differs from the last one sent.
+         */
+        boolean follow(IMotorController master) {
+            if (master == this.master) {
+                return this.suppress();
+            }
+
+            // Any demand after this has to be sent, since the controller is now following
+            this.mode = ControlMode.Follower;
+            this.demand0 = Double.NaN;
+            this.master = master;
+
+            return this.send();
+        }
+
+        /**
+         * Records an inversion, returning whether it differs from the last one sent.
+         */
+        boolean setInverted(boolean inverted) {
+            if (this.inverted != null && this.inverted == inverted) {
+                return this.suppress();
+            }
+
+            this.inverted = inverted;
+
+            return this.send();
+        }
+
+        /**
+         * Forgets the last inversion, after it was set some other way.
+         */
+        void forgetInverted() {
+            this.inverted = null;
+        }
+
+        /**
+         * Forgets everything that was sent, so that the next call of each kind is
+         * always sent. Should be used if the motor controller may have been reset.
+         */
+        void invalidate() {
+            this.mode = null;
+            this.demand0 = Double.NaN;
+            this.master = null;
+            this.inverted = null;
+        }
+
+        /**
+         * Marks a call as being passed on to the motor controller, returning whether
+         * it is the outermost such call.
+         */
+        boolean startForwarding() {
+            boolean outer = !this.forwarding;
+            this.forwarding = true;
+            return outer;
+        }
+
+        /**
+         * Marks the end of a call that was passed on to the motor controller.
+         */
+        void stopForwarding(boolean outer) {
+            if (outer) {
+                this.forwarding = false;
+            }
+        }
+
+        private boolean send() {
+            this.counter.sent.increment();
+            return true;
+        }
+
+        private boolean suppress() {
+            this.counter.suppressed.increment();
+            return false;
+        }
+    }
+
+    /**
+     * CoalescingTalonFX is a WPI_TalonFX that skips repeated demands, follows and
+     * inversions.
+     */
+    public static class CoalescingTalonFX extends WPI_TalonFX {
+        /* What was last sent to the talon. */
+        private final State state;
+
+        /**
+         * Initializes a new CoalescingTalonFX.
+         *
+         * @param deviceNumber the CAN ID of the talon
+         * @param counter      the counter of the subsystem that the talon belongs to
+         */
+        public CoalescingTalonFX(int deviceNumber, Counter counter) {
+            super(deviceNumber);
+            this.state = new State(counter);
+        }
+
+        @Override
+        public void set(ControlMode mode, double value) {
+            this.set(mode, value, DemandType.Neutral, 0.0);
+        }
+
+        @Override
+        public void set(ControlMode mode, double demand0, DemandType demand1Type, double demand1) {
+            if (!this.state.forwarding && !this.state.set(mode, demand0, demand1Type, demand1)) {
+                return;
+            }
+
+            boolean outer = this.state.startForwarding();
+            try {
+                super.set(mode, demand0, demand1Type, demand1);
+            } finally {
+                this.state.stopForwarding(outer);
+            }
+        }
+
+        @Override
+        public void follow(IMotorController masterToFollow) {
+            if (!this.state.forwarding && !this.state.follow(masterToFollow)) {
+                return;
+            }
+
+            boolean outer = this.state.startForwarding();
+            try {
+                super.follow(masterToFollow);
+            } finally {
+                this.state.stopForwarding(outer);
+            }
+        }
+
+        @Override
+        public void setInverted(boolean invert) {
+            if (!this.state.forwarding && !this.state.setInverted(invert)) {
+                return;
+            }
+
+            boolean outer = this.state.startForwarding();
+            try {
+                super.setInverted(invert);
+            } finally {
+                this.state.stopForwarding(outer);
+            }
+        }
+
+        @Override
+        public void setInverted(InvertType invertType) {
+            this.state.forgetInverted();
+            super.setInverted(invertType);
+        }
+
+        @Override
+        public void setInverted(TalonFXInvertType invertType) {
+            this.state.forgetInverted();
+            super.setInverted(invertType);
+        }
+
+        /**
+         * Forgets everything that was sent to the talon, so that the next call of each
+         * kind is always sent.
+         */
+        public void invalidate() {
+            this.state.invalidate();
+        }
+    }
+
+    /**
+     * CoalescingTalonSRX is a WPI_TalonSRX that skips repeated demands, follows
+     * and inversions.
+     */
+    public static class CoalescingTalonSRX extends WPI_TalonSRX {
+        /* What was last sent to the talon. */
+        private final State state;
+
+        /**
+         * Initializes a new CoalescingTalonSRX.
+         *
+         * @param deviceNumber the CAN ID of the talon
+         * @param counter      the counter of the subsystem that the talon belongs to
+         */
+        public CoalescingTalonSRX(int deviceNumber, Counter counter) {
+            super(deviceNumber);
+            this.state = new State(counter);
+        }
+
+        @Override
+        public void set(ControlMode mode, double value) {
+            this.set(mode, value, DemandType.Neutral, 0.0);
+        }
+
+        @Override
+        public void set(ControlMode mode, double demand0, DemandType demand1Type, double demand1) {
+            if (!this.state.forwarding && !this.state.set(mode, demand0, demand1Type, demand1)) {
+                return;
+            }
+
+            boolean outer = this.state.startForwarding();
+            try {
+                super.set(mode, demand0, demand1Type, demand1);
+            } finally {
+                this.state.stopForwarding(outer);
+            }
+        }
+
+        @Override
+        public void follow(IMotorController masterToFollow) {
+            if (!this.state.forwarding && !this.state.follow(masterToFollow)) {
+                return;
+            }
+
+            boolean outer = this.state.startForwarding();
+            try {
+                super.follow(masterToFollow);
+            } finally {
+                this.state.stopForwarding(outer);
+            }
+        }
+
+        @Override
+        public void setInverted(boolean invert) {
+            if (!this.state.forwarding && !this.state.setInverted(invert)) {
+                return;
+            }
+
+            boolean outer = this.state.startForwarding();
+            try {
+                super.setInverted(invert);
+            } finally {
+                this.state.stopForwarding(outer);
+            }
+        }
+
+        @Override
+        public void setInverted(InvertType invertType) {
+            this.state.forgetInverted();
+            super.setInverted(invertType);
+        }
+
+        /**
+         * Forgets everything that was sent to the talon, so that the next call of each
+         * kind is always sent.
+         */
+        public void invalidate() {
+            this.state.invalidate();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package frc.robot.common;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Threads;
+import frc.robot.Constants.ControlConstants;
+
+/**
+ * ControlLoop runs time-critical controllers, such as heading hold, on a
+ * Notifier several times per robot loop, so that they react to their sensors
+ * sooner and can't be held up by slow work in the robot loop. Commands and
+ * controllers only ever pass values to each other through mailboxes, which
+ * never block either side.
+ */
+public class ControlLoop {
+    /* Every registered controller. Replaced as a whole when one is added or removed. */
+    private static volatile Registration[] registrations = new Registration[0];
+
+    /* The notifier running the loop, once started. */
+    private static volatile Notifier notifier;
+
+    /* Whether the loop's thread has been given its priority yet. */
+    private static boolean prioritized;
+
+    /* The number of runs that took longer than the loop's period. */
+    private static final AtomicLong OVERRUNS = new AtomicLong();
+
+    /* How long each run takes. */
+    private static final Telemetry.Signal RUN_MS = Telemetry.signal("control/runMs");
+
+    /**
+     * Controller is run on every run of the control loop, from the loop's
+     * thread. It must only share values with the rest of the robot through
+     * mailboxes.
+     */
+    public interface Controller {
+        /**
+         * Runs the controller once.
+         *
+         * @param timestamp the time of this run of the loop, in seconds
+         */
+        void update(double timestamp);
+    }
+
+    /**
+     * Registration is a registered controller, and whether an error from it has
+     * been reported.
+     */
+    private static class Registration {
+        /* The controller being run. */
+        private final Controller controller;
+
+        /* Whether the controller has failed before, so it isn't reported again. */
+        private boolean reported;
+
+        private Registration(Controller controller) {
+            this.controller = controller;
+        }
+    }
+
+    /**
+     * Mailbox hands a fixed number of values from a single writing thread to a
+     * single reading thread. The reader always gets the latest values that were
+     * posted as a whole, and neither side ever waits on the other.
+     *
+     * <p>
+     * The values live in three buffers: one being written, one being read, and
+     * the latest one posted. Posting and taking each swap a buffer with the latest
+     * one, in a single atomic step.
+     */
+    public static class Mailbox {
+        /* Marks that the latest buffer hasn't been taken by the reader yet. */
+        private static final int FRESH = 4;
+
+        /* The three buffers. */
+        private final double[][] buffers;
+
+        /* The index of the latest buffer posted, along with the FRESH flag. */
+        private final AtomicInteger latest = new AtomicInteger(2);
+
+        /* The index of the buffer that the writer fills, and that the reader reads. */
+        private int writing = 0, reading = 1;
+
+        /**
+         * Initializes a new Mailbox. Until the first post, the reader gets zeros.
+         *
+         * @param size the number of values passed on each post
+         */
+        public Mailbox(int size) {
+            this.buffers = new double[3][size];
+        }
+
+        /**
+         * Posts new values, replacing any that haven't been taken yet. Must only be
+         * called from the writing thread.
+         *
+         * @param values the values to post, which are copied
+         */
+        public void post(double[] values) {
+            System.arraycopy(values, 0, this.buffers[this.writing], 0, this.buffers[this.writing].length);
+            this.writing = this.latest.getAndSet(this.writing | FRESH) & ~FRESH;
+        }
+
+        /**
+         * Gets the latest values posted. Must only be called from the reading thread,
+         * as must hasNew.
+         *
+         * @return the latest values, which must not be changed, and are only valid
+         *         until the next call
+         */
+        public double[] take() {
+            if (this.hasNew()) {
+                this.reading = this.latest.getAndSet(this.reading) & ~FRESH;
+            }
+
+            return this.buffers[this.reading];
+        }
+
+        /**
+         * Checks whether values have been posted since they were last taken.
+         *
+         * @return whether there are new values
+         */
+        public boolean hasNew() {
+            return (this.latest.get() & FRESH) != 0;
+        }
+    }
+
+    /**
+     * Adds a controller to the loop. A command's controller should be added when
+     * the command starts, and removed when it ends, so that only running commands
+     * take up the loop's time.
+     *
+     * @param controller the controller to run
+     */
+    public static synchronized void register(Controller controller) {
+        Registration[] current = registrations;
+        Registration[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = new Registration(controller);
+
+        registrations = next;
+    }
+
+    /**
+     * Removes a controller from the loop, if it was added. The controller may
+     * still be partway through a run when this returns, so it should be disarmed
+     * through its mailbox first.
+     *
+     * @param controller the controller to stop running
+     */
+    public static synchronized void unregister(Controller controller) {
+        Registration[] current = registrations;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].controller == controller) {
+                Registration[] next = new Registration[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+
+                registrations = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts running the registered controllers.
+     */
+    public static synchronized void start() {
+        if (notifier != null) {
+            return;
+        }
+
+        Notifier loop = new Notifier(ControlLoop::run);
+        loop.setName("ControlLoop");
+        loop.startPeriodic(ControlConstants.PERIOD_SECONDS);
+
+        notifier = loop;
+    }
+
+    /**
+     * Checks whether the loop has been started. Until it has, commands should run
+     * their controllers themselves.
+     *
+     * @return whether the loop is running
+     */
+    public static boolean isRunning() {
+        return notifier != null;
+    }
+
+    /**
+     * Gets the number of runs that took longer than the loop's period.
+     *
+     * @return the number of overruns
+     */
+    public static long getOverruns() {
+        return OVERRUNS.get();
+    }
+
+    /**
+     * Runs each controller once. Called from the notifier's thread.
+     */
+    private static void run() {
+        long start = System.nanoTime();
+        double now = Clock.now();
+
+        // The notifier's thread is only known once it runs the loop
+        if (!prioritized) {
+            prioritized = true;
+            Threads.setCurrentThreadPriority(true, ControlConstants.THREAD_PRIORITY);
+        }
+
+        for (Registration registration : registrations) {
+            try {
+                registration.controller.update(now);
+            } catch (RuntimeException e) {
+                // One broken controller mustn't stop the others
+                if (!registration.reported) {
+                    registration.reported = true;
+                    DriverStation.reportError("Controller " + registration.controller.getClass().getSimpleName()
+                            + " failed: " + e, e.getStackTrace());
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > ControlConstants.PERIOD_SECONDS * 1e9) {
+            OVERRUNS.incrementAndGet();
+        }
+
+        RUN_MS.log(now, elapsed / 1e6);
+    }
+}
@@ -0,0 +1,224 @@
+package frc.robot.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.AnalogTrigger;
+import edu.wpi.first.wpilibj.AnalogTriggerOutput;
+import edu.wpi.first.wpilibj.AnalogTriggerType;
+import edu.wpi.first.wpilibj.InterruptHandlerFunction;
+
+/**
+ * Defines sensors that report each change in their state as it happens, rather
+ * than when they are next sampled. An edge caught by an interrupt is stamped
+ * with the FPGA's time of the edge, and handed to the robot loop through a
+ * lock-free queue, so that no edge is lost however long the loop takes.
+ */
+public class Edges {
+    /**
+     * Queue is a fixed-size, lock-free queue of timestamped edges, written by a
+     * single interrupt thread and read by a single robot loop. If the loop falls
+     * so far behind that the queue fills up, new edges are dropped and counted.
+     */
+    public static class Queue {
+        /* The time of each edge, in seconds, and whether it was rising. */
+        private final double[] timestamps;
+        private final boolean[] rising;
+
+        /* Masks a sequence number into an index into the arrays. */
+        private final int mask;
+
+        /*
+         * The sequence number of the next edge to be read, and of the next to be
+         * written. The writer publishes an edge by advancing the tail after filling its
+         * slot, and the reader frees a slot by advancing the head.
+         */
+        private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+        /* The number of edges dropped because the queue was full. */
+        private final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * Initializes a new Queue.
+         *
+         * @param capacity the number of edges that the queue can hold, which must be
+         *                 a power of two
+         */
+        public Queue(int capacity) {
+            if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+                throw new IllegalArgumentException("capacity must be a power of two, not " + capacity);
+            }
+
+            this.timestamps = new double[capacity];
+            this.rising = new boolean[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Adds an edge to the queue. Must only be called from the writing thread.
+         *
+         * @param timestamp the time of the edge, in seconds
+         * @param rising    whether the edge was rising
+         * @return whether there was room for the edge
+         */
+        public boolean offer(double timestamp, boolean rising) {
+            long tail = this.tail.get();
+            if (tail - this.head.get() > this.mask) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+
+            int index = (int) (tail & this.mask);
+            this.timestamps[index] = timestamp;
+            this.rising[index] = rising;
+            this.tail.lazySet(tail + 1);
+
+            return true;
+        }
+
+        /**
+         * Checks whether there are any edges waiting to be read. Must only be called
+         * from the reading thread, as must each of the methods below.
+         *
+         * @return whether the queue is empty
+         */
+        public boolean isEmpty() {
+            return this.head.get() == this.tail.get();
+        }
+
+        /**
+         * Gets the time of the oldest edge in the queue, which must not be empty.
+         *
+         * @return the time of the edge, in seconds
+         */
+        public double peekTimestamp() {
+            return this.timestamps[(int) (this.head.get() & this.mask)];
+        }
+
+        /**
+         * Gets whether the oldest edge in the queue, which must not be empty, was
+         * rising.
+         *
+         * @return whether the edge was rising
+         */
+        public boolean peekRising() {
+            return this.rising[(int) (this.head.get() & this.mask)];
+        }
+
+        /**
+         * Removes the oldest edge from the queue, which must not be empty.
+         */
+        public void remove() {
+            this.head.lazySet(this.head.get() + 1);
+        }
+
+        /**
+         * Gets the number of edges that were dropped because the queue was full.
+         *
+         * @return the number of edges dropped
+         */
+        public long getDropped() {
+            return this.dropped.get();
+        }
+    }
+
+    /**
+     * AnalogSensor turns an analog input into a digital one with an analog
+     * trigger, and queues each of its edges from an interrupt. The trigger's two
+     * limits give it hysteresis, so that a reading hovering around a single
+     * threshold doesn't produce a burst of edges.
+     */
+    public static class AnalogSensor {
+        /* The trigger watching the input, and its output. */
+        private final AnalogTrigger trigger;
+        private final AnalogTriggerOutput output;
+
+        /* The edges caught by the interrupt, waiting to be read. */
+        private final Queue queue;
+
+        /**
+         * Initializes a new AnalogSensor, and starts listening for its edges.
+         *
+         * @param input    the analog input to watch
+         * @param lower    the voltage below which the sensor is low
+         * @param upper    the voltage above which the sensor is high
+         * @param capacity the number of edges that can wait to be read, which must be
+         *                 a power of two
+         */
+        public AnalogSensor(AnalogInput input, double lower, double upper, int capacity) {
+            this.queue = new Queue(capacity);
+
+            this.trigger = new AnalogTrigger(input);
+            this.trigger.setLimitsVoltage(lower, upper);
+            this.output = this.trigger.createOutput(AnalogTriggerType.kState);
+
+            this.output.requestInterrupts(new InterruptHandlerFunction<Object>() {
+                @Override
+                public void interruptFired(int interruptAssertedMask, Object param) {
+                    AnalogSensor.this.queueEdges(interruptAssertedMask);
+                }
+            });
+            this.output.setUpSourceEdge(true, true);
+            this.output.enableInterrupts();
+        }
+
+        /**
+         * Queues the edges reported by an interrupt, oldest first. Called from the
+         * interrupt thread.
+         */
+        private void queueEdges(int mask) {
+            boolean rose = isRising(mask);
+            boolean fell = isFalling(mask);
+
+            double risingTimestamp = rose ? this.output.readRisingTimestamp() : 0.0;
+            double fallingTimestamp = fell ? this.output.readFallingTimestamp() : 0.0;
+
+            if (rose && fell && fallingTimestamp < risingTimestamp) {
+                this.queue.offer(fallingTimestamp, false);
+                this.queue.offer(risingTimestamp, true);
+            } else {
+                if (rose) {
+                    this.queue.offer(risingTimestamp, true);
+                }
+                if (fell) {
+                    this.queue.offer(fallingTimestamp, false);
+                }
+            }
+        }
+
+        /**
+         * Checks whether an interrupt's mask reports a rising edge. The HAL sets bit
+         * n for a rising edge on interrupt n, so any of the low eight bits counts, as
+         * in InterruptableSensorBase.waitForInterrupt.
+         */
+        static boolean isRising(int mask) {
+            return (mask & 0xFF) != 0;
+        }
+
+        /**
+         * Checks whether an interrupt's mask reports a falling edge, which sets bit
+         * n + 8 for interrupt n.
+         */
+        static boolean isFalling(int mask) {
+            return (mask & 0xFF00) != 0;
+        }
+
+        /**
+         * Gets the current state of the sensor, with hysteresis applied.
+         *
+         * @return whether the input is high
+         */
+        public boolean get() {
+            return this.output.get();
+        }
+
+        /**
+         * Gets the queue of edges caught from the sensor.
+         *
+         * @return the sensor's edges
+         */
+        public Queue edges() {
+            return this.queue;
+        }
+    }
+}
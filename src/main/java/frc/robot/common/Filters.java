@@ -0,0 +1,574 @@
+package frc.robot.common;
+
+/**
+ * Defines a set of fixed-size, allocation-free filters for smoothing sensor
+ * data sampled once per robot loop.
+ */
+public class Filters {
+    /**
+     * Estimator tracks a single noisy, timestamped measurement, and estimates its
+     * value at any point in time.
+     */
+    public static interface Estimator {
+        /**
+         * Feeds a new measurement into the estimator.
+         *
+         * @param measurement the measured value
+         * @param timestamp   the time at which the value was measured, in seconds
+         */
+        void update(double measurement, double timestamp);
+
+        /**
+         * Estimates the value of the measured quantity at the given time.
+         *
+         * @param timestamp the time at which the value should be estimated, in seconds
+         * @return the estimated value
+         */
+        double get(double timestamp);
+
+        /**
+         * Estimates the rate at which the measured quantity is changing.
+         *
+         * @return the estimated rate of change, in units per second
+         */
+        double getRate();
+
+        /**
+         * Forgets all of the measurements fed into the estimator.
+         */
+        void reset();
+    }
+
+    /**
+     * EstimatorType represents one of the available implementations of the
+     * Estimator interface.
+     */
+    public static enum EstimatorType {
+        MEDIAN, ALPHA_BETA, KALMAN;
+
+        /**
+         * Initializes a new EstimatorType from the given name.
+         *
+         * @param type the name of the estimator type
+         * @return the estimator type, or MEDIAN if the name is unknown
+         */
+        public static EstimatorType fromString(String type) {
+            switch (type.toLowerCase()) {
+            case "alphabeta":
+            case "alpha_beta":
+                return ALPHA_BETA;
+            case "kalman":
+                return KALMAN;
+            }
+
+            return MEDIAN;
+        }
+    }
+
+    /**
+     * Median maintains the median of the most recent values pushed into it. Values
+     * are kept in a primitive ring buffer, and are indexed by two heaps (a max-heap
+     * holding the lower half of the window, and a min-heap holding the upper half),
+     * so that pushing a value costs O(log n) and reading the median costs O(1).
+     */
+    public static class Median implements Estimator {
+        /* The values in the window, stored in the order that they were pushed. */
+        private final double[] values;
+
+        /* The heap (LOWER or UPPER) that each slot in the ring buffer is stored in. */
+        private final int[] heapOf;
+
+        /* The position of each slot in the ring buffer inside of its heap. */
+        private final int[] positionOf;
+
+        /* Max-heap and min-heap of ring buffer slots, ordered by their values. */
+        private final int[] lower, upper;
+
+        /* The number of slots contained in each of the heaps. */
+        private int lowerSize, upperSize;
+
+        /* The slot holding the oldest value in the window. */
+        private int oldest;
+
+        /* The number of values currently contained in the window. */
+        private int size;
+
+        /* Identifiers for each of the heaps. */
+        private static final int LOWER = 0, UPPER = 1;
+
+        /**
+         * Initializes a new Median filter over the given number of values.
+         *
+         * @param capacity the maximum number of values that the median is taken over
+         */
+        public Median(int capacity) {
+            this.values = new double[capacity];
+            this.heapOf = new int[capacity];
+            this.positionOf = new int[capacity];
+            this.lower = new int[capacity];
+            this.upper = new int[capacity];
+            this.reset();
+        }
+
+        /**
+         * Removes all of the values from the window.
+         */
+        @Override
+        public void reset() {
+            this.lowerSize = 0;
+            this.upperSize = 0;
+            this.oldest = 0;
+            this.size = 0;
+        }
+
+        /**
+         * Gets the number of values currently contained in the window.
+         *
+         * @return the number of values in the window
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Pushes a value into the window, evicting the oldest value if the window is
+         * full.
+         *
+         * @param value the value that will be pushed into the window
+         */
+        public void push(double value) {
+            int slot;
+
+            if (this.size == this.values.length) {
+                // Reuse the slot of the oldest value, and remove it from its heap
+                slot = this.oldest;
+                this.oldest = (this.oldest + 1) % this.values.length;
+                this.remove(slot);
+            } else {
+                slot = (this.oldest + this.size) % this.values.length;
+                this.size++;
+            }
+
+            this.values[slot] = value;
+
+            // Everything smaller than the top of the lower half belongs in the lower half
+            if (this.lowerSize > 0 && value <= this.values[this.lower[0]]) {
+                this.insert(LOWER, slot);
+            } else {
+                this.insert(UPPER, slot);
+            }
+
+            this.rebalance();
+        }
+
+        /**
+         * Gets the median of the values in the window. For an even number of values,
+         * the upper of the two middle values is used.
+         *
+         * @return the median value in the window, or 0 if the window is empty
+         */
+        public double get() {
+            return this.upperSize == 0 ? 0.0 : this.values[this.upper[0]];
+        }
+
+        /**
+         * Pushes a measurement into the window. The median ignores when values were
+         * measured.
+         *
+         * @param measurement the measured value
+         * @param timestamp   the time at which the value was measured, in seconds
+         */
+        @Override
+        public void update(double measurement, double timestamp) {
+            this.push(measurement);
+        }
+
+        /**
+         * Gets the median of the values in the window.
+         *
+         * @param timestamp the time at which the value should be estimated, in seconds
+         * @return the median value in the window
+         */
+        @Override
+        public double get(double timestamp) {
+            return this.get();
+        }
+
+        /**
+         * The median doesn't track rates, so the value is assumed to be constant.
+         *
+         * @return zero
+         */
+        @Override
+        public double getRate() {
+            return 0.0;
+        }
+
+        /**
+         * Keeps the upper heap at the same size as, or one larger than, the lower
+         * heap.
+         */
+        private void rebalance() {
+            while (this.upperSize > this.lowerSize + 1) {
+                int slot = this.upper[0];
+                this.remove(slot);
+                this.insert(LOWER, slot);
+            }
+
+            while (this.lowerSize > this.upperSize) {
+                int slot = this.lower[0];
+                this.remove(slot);
+                this.insert(UPPER, slot);
+            }
+        }
+
+        /**
+         * Adds the given slot to the bottom of a heap, and sifts it into place.
+         */
+        private void insert(int heap, int slot) {
+            int position = heap == LOWER ? this.lowerSize++ : this.upperSize++;
+
+            this.place(heap, position, slot);
+            this.siftUp(heap, position);
+        }
+
+        /**
+         * Removes the given slot from whichever heap it is contained in.
+         */
+        private void remove(int slot) {
+            int heap = this.heapOf[slot];
+            int position = this.positionOf[slot];
+            int[] nodes = heap == LOWER ? this.lower : this.upper;
+            int last = heap == LOWER ? --this.lowerSize : --this.upperSize;
+
+            if (position == last) {
+                return;
+            }
+
+            // Fill the hole with the last node in the heap, and restore the heap order
+            int moved = nodes[last];
+            this.place(heap, position, moved);
+            this.siftUp(heap, position);
+            this.siftDown(heap, this.positionOf[moved]);
+        }
+
+        /**
+         * Moves the node at the given position towards the root of the heap until its
+         * parent is ordered before it.
+         */
+        private void siftUp(int heap, int position) {
+            int[] nodes = heap == LOWER ? this.lower : this.upper;
+            int slot = nodes[position];
+
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+
+                if (!this.before(heap, slot, nodes[parent])) {
+                    break;
+                }
+
+                this.place(heap, position, nodes[parent]);
+                position = parent;
+            }
+
+            this.place(heap, position, slot);
+        }
+
+        /**
+         * Moves the node at the given position away from the root of the heap until
+         * both of its children are ordered after it.
+         */
+        private void siftDown(int heap, int position) {
+            int[] nodes = heap == LOWER ? this.lower : this.upper;
+            int heapSize = heap == LOWER ? this.lowerSize : this.upperSize;
+            int slot = nodes[position];
+
+            while (true) {
+                int child = 2 * position + 1;
+
+                if (child >= heapSize) {
+                    break;
+                }
+
+                // Pick whichever child should be closer to the root
+                if (child + 1 < heapSize && this.before(heap, nodes[child + 1], nodes[child])) {
+                    child++;
+                }
+
+                if (!this.before(heap, nodes[child], slot)) {
+                    break;
+                }
+
+                this.place(heap, position, nodes[child]);
+                position = child;
+            }
+
+            this.place(heap, position, slot);
+        }
+
+        /**
+         * Checks whether or not slot a should be closer to the root of the heap than
+         * slot b.
+         */
+        private boolean before(int heap, int a, int b) {
+            return heap == LOWER ? this.values[a] > this.values[b] : this.values[a] < this.values[b];
+        }
+
+        /**
+         * Stores a slot at the given position in a heap, keeping the slot's index up to
+         * date.
+         */
+        private void place(int heap, int position, int slot) {
+            (heap == LOWER ? this.lower : this.upper)[position] = slot;
+            this.heapOf[slot] = heap;
+            this.positionOf[slot] = position;
+        }
+    }
+
+    /**
+     * Mode maintains the most often occurring value of the most recent boolean
+     * values pushed into it in O(1) time per value.
+     */
+    public static class Mode {
+        /* The values in the window, stored in the order that they were pushed. */
+        private final boolean[] values;
+
+        /* The slot holding the oldest value in the window. */
+        private int oldest;
+
+        /* The number of values currently contained in the window. */
+        private int size;
+
+        /* The number of true values contained in the window. */
+        private int nTrue;
+
+        /* The most often occurring value. Ties keep the previous mode. */
+        private boolean mode;
+
+        /**
+         * Initializes a new Mode filter over the given number of values.
+         *
+         * @param capacity the maximum number of values that the mode is taken over
+         */
+        public Mode(int capacity) {
+            this.values = new boolean[capacity];
+            this.reset();
+        }
+
+        /**
+         * Removes all of the values from the window.
+         */
+        public void reset() {
+            this.oldest = 0;
+            this.size = 0;
+            this.nTrue = 0;
+            this.mode = false;
+        }
+
+        /**
+         * Pushes a value into the window, evicting the oldest value if the window is
+         * full.
+         *
+         * @param value the value that will be pushed into the window
+         */
+        public void push(boolean value) {
+            if (this.size == this.values.length) {
+                // Forget about the oldest value, since it is about to be overwritten
+                if (this.values[this.oldest]) {
+                    this.nTrue--;
+                }
+
+                this.values[this.oldest] = value;
+                this.oldest = (this.oldest + 1) % this.values.length;
+            } else {
+                this.values[(this.oldest + this.size) % this.values.length] = value;
+                this.size++;
+            }
+
+            if (value) {
+                this.nTrue++;
+            }
+
+            // Only change the mode if one value strictly outnumbers the other
+            int nFalse = this.size - this.nTrue;
+            if (this.nTrue != nFalse) {
+                this.mode = this.nTrue > nFalse;
+            }
+        }
+
+        /**
+         * Gets the most often occurring value in the window.
+         *
+         * @return the mode of the values in the window
+         */
+        public boolean get() {
+            return this.mode;
+        }
+    }
+
+    /**
+     * AlphaBeta tracks a value and its rate of change, correcting a constant-rate
+     * prediction by fixed fractions (alpha and beta) of the prediction error.
+     */
+    public static class AlphaBeta implements Estimator {
+        /* The gains applied to the prediction error for the value and the rate. */
+        private final double alpha, beta;
+
+        /* The estimated value and rate as of the last measurement. */
+        private double value, rate;
+
+        /* The time of the last measurement, in seconds. */
+        private double lastTimestamp;
+
+        /* Whether or not a measurement has been fed into the estimator. */
+        private boolean initialized;
+
+        /**
+         * Initializes a new AlphaBeta estimator with the given gains.
+         *
+         * @param alpha the fraction of the prediction error applied to the value
+         * @param beta  the fraction of the prediction error applied to the rate
+         */
+        public AlphaBeta(double alpha, double beta) {
+            this.alpha = alpha;
+            this.beta = beta;
+            this.reset();
+        }
+
+        @Override
+        public void reset() {
+            this.value = 0.0;
+            this.rate = 0.0;
+            this.lastTimestamp = 0.0;
+            this.initialized = false;
+        }
+
+        @Override
+        public void update(double measurement, double timestamp) {
+            // Start off at the first measurement
+            if (!this.initialized) {
+                this.value = measurement;
+                this.rate = 0.0;
+                this.lastTimestamp = timestamp;
+                this.initialized = true;
+
+                return;
+            }
+
+            double dt = Math.max(timestamp - this.lastTimestamp, 0.0);
+
+            // Correct the prediction by a fraction of how far off it was
+            double residual = measurement - (this.value + this.rate * dt);
+            this.value += this.rate * dt + this.alpha * residual;
+
+            if (dt > 0) {
+                this.rate += this.beta * residual / dt;
+            }
+
+            this.lastTimestamp = timestamp;
+        }
+
+        @Override
+        public double get(double timestamp) {
+            return this.value + this.rate * Math.max(timestamp - this.lastTimestamp, 0.0);
+        }
+
+        @Override
+        public double getRate() {
+            return this.rate;
+        }
+    }
+
+    /**
+     * Kalman tracks a value and its rate of change with a constant-velocity Kalman
+     * filter, treating changes in the rate as white noise.
+     */
+    public static class Kalman implements Estimator {
+        /* The variance of the measurements. */
+        private final double measurementVariance;
+
+        /* The spectral density of the (unmodeled) rate changes. */
+        private final double accelerationVariance;
+
+        /* The estimated value and rate as of the last measurement. */
+        private double value, rate;
+
+        /* The covariance of the estimate. */
+        private double p00, p01, p11;
+
+        /* The time of the last measurement, in seconds. */
+        private double lastTimestamp;
+
+        /* Whether or not a measurement has been fed into the estimator. */
+        private boolean initialized;
+
+        /**
+         * Initializes a new Kalman estimator with the given noise parameters.
+         *
+         * @param measurementDeviation  the standard deviation of the measurements
+         * @param accelerationDeviation the standard deviation of changes to the rate,
+         *                              per second
+         */
+        public Kalman(double measurementDeviation, double accelerationDeviation) {
+            this.measurementVariance = measurementDeviation * measurementDeviation;
+            this.accelerationVariance = accelerationDeviation * accelerationDeviation;
+            this.reset();
+        }
+
+        @Override
+        public void reset() {
+            this.value = 0.0;
+            this.rate = 0.0;
+            this.lastTimestamp = 0.0;
+            this.initialized = false;
+        }
+
+        @Override
+        public void update(double measurement, double timestamp) {
+            // Start off at the first measurement, knowing nothing about the rate
+            if (!this.initialized) {
+                this.value = measurement;
+                this.rate = 0.0;
+                this.p00 = this.measurementVariance;
+                this.p01 = 0.0;
+                this.p11 = this.measurementVariance * 1e3;
+                this.lastTimestamp = timestamp;
+                this.initialized = true;
+
+                return;
+            }
+
+            double dt = Math.max(timestamp - this.lastTimestamp, 0.0);
+
+            // Predict the state forward to the time of the measurement
+            double q = this.accelerationVariance;
+            this.value += this.rate * dt;
+            double p00 = this.p00 + dt * (2 * this.p01 + dt * this.p11) + q * dt * dt * dt / 3;
+            double p01 = this.p01 + dt * this.p11 + q * dt * dt / 2;
+            double p11 = this.p11 + q * dt;
+
+            // Correct the prediction with the measurement
+            double innovation = measurement - this.value;
+            double s = p00 + this.measurementVariance;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+
+            this.value += k0 * innovation;
+            this.rate += k1 * innovation;
+            this.p00 = (1 - k0) * p00;
+            this.p01 = (1 - k0) * p01;
+            this.p11 = p11 - k1 * p01;
+            this.lastTimestamp = timestamp;
+        }
+
+        @Override
+        public double get(double timestamp) {
+            return this.value + this.rate * Math.max(timestamp - this.lastTimestamp, 0.0);
+        }
+
+        @Override
+        public double getRate() {
+            return this.rate;
+        }
+    }
+}
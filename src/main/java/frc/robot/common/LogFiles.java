@@ -0,0 +1,63 @@
+package frc.robot.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.TelemetryConstants;
+
+/**
+ * LogFiles picks where each log file goes, and keeps the logs from filling the
+ * disk. A new file is made on every boot, so only the newest few of each kind
+ * are kept, and a file is only made if there is room for it.
+ */
+public class LogFiles {
+    /**
+     * Gets the directory that logs are written to: the USB stick if there is
+     * one, and the robot's flash if not.
+     *
+     * @return the log directory
+     */
+    public static File directory() {
+        File usb = new File(TelemetryConstants.USB_DIRECTORY);
+        if (usb.isDirectory() && usb.canWrite()) {
+            return usb;
+        }
+
+        return new File(Filesystem.getOperatingDirectory(), "logs");
+    }
+
+    /**
+     * Names a new log file, deleting the oldest logs of the same kind so that only
+     * the newest few are kept, counting the new one.
+     *
+     * @param prefix the kind of log, which starts its file name
+     * @param size   the most that the new file will take up, in bytes
+     * @return the new log file, which hasn't been created yet
+     * @throws IOException if there isn't room for the file
+     */
+    public static File create(String prefix, long size) throws IOException {
+        File directory = directory();
+        directory.mkdirs();
+
+        // The clock may not have been set when older logs were named, so go by when
+        // each was last written to instead
+        File[] existing = directory.listFiles((dir, name) -> name.startsWith(prefix + "-") && name.endsWith(".bin"));
+        if (existing != null) {
+            Arrays.sort(existing, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+
+            for (int i = 0; i <= existing.length - TelemetryConstants.MAX_LOG_FILES; i++) {
+                existing[i].delete();
+            }
+        }
+
+        long free = directory.getUsableSpace();
+        if (free - size < TelemetryConstants.MIN_FREE_BYTES) {
+            throw new IOException(String.format("only %d MB free in %s", free >> 20, directory));
+        }
+
+        return new File(directory, String.format("%s-%013d.bin", prefix, System.currentTimeMillis()));
+    }
+}
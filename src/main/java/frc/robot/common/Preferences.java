@@ -1,33 +1,192 @@
 package frc.robot.common;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableValue;
+import edu.wpi.first.wpilibj.DriverStation;
+
 /**
  * Defines a set of helper methods and classes for dealing with robot
  * preferences.
- * 
+ *
  * @author Dowland Aiello
  */
 public class Preferences {
+    /* The NetworkTables table that the robot preferences are kept in. */
+    private static final String TABLE_NAME = "Preferences";
+
+    /* The changes to the preferences table that the handles are told about. */
+    private static final int LISTENER_FLAGS = EntryListenerFlags.kNew | EntryListenerFlags.kUpdate
+            | EntryListenerFlags.kDelete | EntryListenerFlags.kLocal;
+
+    /*
+     * Every preference that has been declared, by the name of its key. Several
+     * handles may share a key.
+     */
+    private static final Map<String, List<Pref>> SCHEMA = new ConcurrentHashMap<>();
+
+    /* The table that the preferences are kept in, once a handle has been declared. */
+    private static NetworkTable table;
+
+    /**
+     * Gets the preferences table, listening for changes to any of its entries the
+     * first time that it is used. A single listener serves every handle.
+     *
+     * @return the preferences table
+     */
+    private static synchronized NetworkTable table() {
+        if (table == null) {
+            table = NetworkTableInstance.getDefault().getTable(TABLE_NAME);
+            table.addEntryListener((changedTable, key, entry, value, flags) -> {
+                List<Pref> prefs = SCHEMA.get(key);
+                if (prefs == null) {
+                    return;
+                }
+
+                for (Pref pref : prefs) {
+                    pref.update((flags & EntryListenerFlags.kDelete) != 0 ? null : value);
+                }
+            }, LISTENER_FLAGS);
+        }
+
+        return table;
+    }
+
+    /**
+     * Loads and validates every declared preference. Any preference that hasn't
+     * been set yet is given its default, so that it shows up in the preferences
+     * pane, and any preference outside of its range is reported. Should be called
+     * once, from robotInit, after every handle has been declared.
+     *
+     * @return the number of preferences that were outside of their ranges
+     */
+    public static int loadAll() {
+        NetworkTable preferencesTable = table();
+        int invalid = 0;
+
+        for (List<Pref> prefs : SCHEMA.values()) {
+            for (Pref pref : prefs) {
+                NetworkTableEntry entry = preferencesTable.getEntry(pref.getKey().toString());
+                pref.setDefault(entry);
+
+                if (!pref.validate(entry.getValue())) {
+                    invalid++;
+                }
+            }
+        }
+
+        if (invalid > 0) {
+            DriverStation.reportWarning(invalid + " preferences are outside of their ranges, and were clamped", false);
+        }
+
+        return invalid;
+    }
+
     /**
      * Defines a group of preferences, established in a subsystem class.
      */
     public static interface Group {
         /**
          * Gets the name of the preferences group.
-         * 
+         *
          * @return the name of the preferences group
          */
         String groupName();
 
+        /**
+         * Creates a group with the given name, so that preferences can be declared
+         * without an instance of the class that they belong to.
+         *
+         * @param name the name of the group
+         * @return the group
+         */
+        public static Group named(String name) {
+            return () -> name;
+        }
+
         /**
          * Generates a new instance of the preferences Key class using the provided name
-         * for the
-         * 
-         * @param property
-         * @return
+         * for the property.
+         *
+         * @param property the name of the property
+         * @return the key of the property in this group
          */
         public default Key preferencesKey(String property) {
             return new Key(this, property);
         }
+
+        /**
+         * Creates a handle to a number in this group.
+         *
+         * @param property     the name of the property
+         * @param defaultValue the value used when the preference isn't set
+         * @return the handle to the preference
+         */
+        public default DoublePref doublePref(String property, double defaultValue) {
+            return new DoublePref(this.preferencesKey(property), defaultValue, Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Creates a handle to a number in this group, which must lie within the given
+         * range. Values outside of the range are clamped to it.
+         *
+         * @param property     the name of the property
+         * @param defaultValue the value used when the preference isn't set
+         * @param min          the smallest allowed value
+         * @param max          the largest allowed value
+         * @return the handle to the preference
+         */
+        public default DoublePref doublePref(String property, double defaultValue, double min, double max) {
+            return new DoublePref(this.preferencesKey(property), defaultValue, min, max);
+        }
+
+        /**
+         * Creates a handle to a boolean in this group.
+         *
+         * @param property     the name of the property
+         * @param defaultValue the value used when the preference isn't set
+         * @return the handle to the preference
+         */
+        public default BooleanPref booleanPref(String property, boolean defaultValue) {
+            return new BooleanPref(this.preferencesKey(property), defaultValue);
+        }
+
+        /**
+         * Creates a handle to a string in this group.
+         *
+         * @param property     the name of the property
+         * @param defaultValue the value used when the preference isn't set
+         * @return the handle to the preference
+         */
+        public default StringPref stringPref(String property, String defaultValue) {
+            return new StringPref(this.preferencesKey(property), defaultValue);
+        }
+
+        /**
+         * Creates a handle to a string in this group, which is parsed into another
+         * type whenever it changes.
+         *
+         * @param property     the name of the property
+         * @param defaultValue the string used when the preference isn't set
+         * @param parser       converts the string into the preference's value
+         * @return the handle to the preference
+         */
+        public default <T> ParsedPref<T> parsedPref(String property, String defaultValue,
+                Function<String, T> parser) {
+            return new ParsedPref<>(this.preferencesKey(property), defaultValue, parser);
+        }
     }
 
     /**
@@ -40,25 +199,252 @@ public class Preferences {
          */
         private String group, name;
 
+        /* The name of the key in the robot's preferences, built once. */
+        private final String qualifiedName;
+
         /**
          * Initializes a new Key using the provided group name and key name.
-         * 
+         *
          * @param group the group that the key should be part of
          * @param name  the name that the key will be registered under
          */
         public Key(Group group, String name) {
             this.group = group.groupName();
             this.name = name;
+            this.qualifiedName = this.group + "::" + this.name;
         }
 
         /**
          * Converts the Key into a string suitable for the Robot's preferences.
-         * 
+         *
          * @return a string representation of the robot preferences key
          */
         @Override
         public String toString() {
-            return String.format("%s::%s", this.group, this.name);
+            return this.qualifiedName;
+        }
+    }
+
+    /**
+     * Pref is a handle to a single robot preference. It is told about changes to
+     * the preference, so reading its value never touches NetworkTables.
+     */
+    private static abstract class Pref {
+        /* The key of the preference. */
+        private final Key key;
+
+        /**
+         * Initializes a new Pref.
+         *
+         * @param key the key of the preference
+         */
+        Pref(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Adds the preference to the schema and reads its current value. Called by
+         * subclasses once their default is set.
+         */
+        final void declare() {
+            NetworkTableEntry entry = table().getEntry(this.key.toString());
+
+            SCHEMA.computeIfAbsent(this.key.toString(), name -> new CopyOnWriteArrayList<>()).add(this);
+            this.update(entry.getValue());
+        }
+
+        /**
+         * Gets the key of the preference.
+         *
+         * @return the key of the preference
+         */
+        public Key getKey() {
+            return this.key;
+        }
+
+        /**
+         * Replaces the cached value with the given one. Called from the NetworkTables
+         * listener thread.
+         *
+         * @param value the new value of the preference, or null if it isn't set
+         */
+        abstract void update(NetworkTableValue value);
+
+        /**
+         * Sets the preference's entry to its default value, if it isn't set yet.
+         *
+         * @param entry the preference's entry
+         */
+        abstract void setDefault(NetworkTableEntry entry);
+
+        /**
+         * Checks whether the given value is allowed for the preference.
+         *
+         * @param value the value of the preference, or null if it isn't set
+         * @return whether the value is allowed
+         */
+        boolean validate(NetworkTableValue value) {
+            return true;
+        }
+    }
+
+    /**
+     * DoublePref is a handle to a number in the robot preferences.
+     */
+    public static class DoublePref extends Pref implements DoubleSupplier {
+        /* The value used when the preference isn't set. */
+        private final double defaultValue;
+
+        /* The range that the preference must lie within. */
+        private final double min, max;
+
+        /* The current value of the preference. */
+        private volatile double value;
+
+        /**
+         * Initializes a new DoublePref.
+         *
+         * @param key          the key of the preference
+         * @param defaultValue the value used when the preference isn't set
+         * @param min          the smallest allowed value
+         * @param max          the largest allowed value
+         */
+        public DoublePref(Key key, double defaultValue, double min, double max) {
+            super(key);
+            this.defaultValue = defaultValue;
+            this.min = min;
+            this.max = max;
+            this.value = defaultValue;
+            this.declare();
+        }
+
+        @Override
+        public double getAsDouble() {
+            return this.value;
+        }
+
+        @Override
+        void update(NetworkTableValue value) {
+            double updated = value != null && value.isDouble() ? value.getDouble() : this.defaultValue;
+            this.value = Math.max(this.min, Math.min(this.max, updated));
+        }
+
+        @Override
+        void setDefault(NetworkTableEntry entry) {
+            entry.setDefaultDouble(this.defaultValue);
+        }
+
+        @Override
+        boolean validate(NetworkTableValue value) {
+            if (value == null || !value.isDouble() || (value.getDouble() >= this.min && value.getDouble() <= this.max)) {
+                return true;
+            }
+
+            DriverStation.reportWarning(String.format("Preference %s is %f, outside of [%f, %f]", this.getKey(),
+                    value.getDouble(), this.min, this.max), false);
+
+            return false;
+        }
+    }
+
+    /**
+     * BooleanPref is a handle to a boolean in the robot preferences.
+     */
+    public static class BooleanPref extends Pref implements BooleanSupplier {
+        /* The value used when the preference isn't set. */
+        private final boolean defaultValue;
+
+        /* The current value of the preference. */
+        private volatile boolean value;
+
+        /**
+         * Initializes a new BooleanPref.
+         *
+         * @param key          the key of the preference
+         * @param defaultValue the value used when the preference isn't set
+         */
+        public BooleanPref(Key key, boolean defaultValue) {
+            super(key);
+            this.defaultValue = defaultValue;
+            this.value = defaultValue;
+            this.declare();
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            return this.value;
+        }
+
+        @Override
+        void update(NetworkTableValue value) {
+            this.value = value != null && value.isBoolean() ? value.getBoolean() : this.defaultValue;
+        }
+
+        @Override
+        void setDefault(NetworkTableEntry entry) {
+            entry.setDefaultBoolean(this.defaultValue);
+        }
+    }
+
+    /**
+     * ParsedPref is a handle to a string in the robot preferences, which is
+     * converted into another type each time it changes rather than each time it is
+     * read.
+     */
+    public static class ParsedPref<T> extends Pref implements Supplier<T> {
+        /* The value used when the preference isn't set. */
+        private final String defaultValue;
+
+        /* Converts the string into the preference's value. */
+        private final Function<String, T> parser;
+
+        /* The current value of the preference. */
+        private volatile T value;
+
+        /**
+         * Initializes a new ParsedPref.
+         *
+         * @param key          the key of the preference
+         * @param defaultValue the string used when the preference isn't set
+         * @param parser       converts the string into the preference's value
+         */
+        public ParsedPref(Key key, String defaultValue, Function<String, T> parser) {
+            super(key);
+            this.defaultValue = defaultValue;
+            this.parser = parser;
+            this.value = parser.apply(defaultValue);
+            this.declare();
+        }
+
+        @Override
+        public T get() {
+            return this.value;
+        }
+
+        @Override
+        void update(NetworkTableValue value) {
+            this.value = this.parser
+                    .apply(value != null && value.isString() ? value.getString() : this.defaultValue);
+        }
+
+        @Override
+        void setDefault(NetworkTableEntry entry) {
+            entry.setDefaultString(this.defaultValue);
+        }
+    }
+
+    /**
+     * StringPref is a handle to a string in the robot preferences.
+     */
+    public static class StringPref extends ParsedPref<String> {
+        /**
+         * Initializes a new StringPref.
+         *
+         * @param key          the key of the preference
+         * @param defaultValue the value used when the preference isn't set
+         */
+        public StringPref(Key key, String defaultValue) {
+            super(key, defaultValue, Function.identity());
         }
     }
 }
@@ -0,0 +1,436 @@
+package frc.robot.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.ProfilerConstants;
+
+/**
+ * Profiler measures how long each subsystem's periodic and each command's
+ * initialize, execute and end take, so that it can be seen where each robot
+ * loop goes. Timings are recorded into fixed-size histograms without
+ * allocating, and published to NetworkTables about once a second. A loop that
+ * runs over its budget is reported along with the component that took the
+ * longest during it.
+ */
+public class Profiler {
+    /* The table that the timings are published to. */
+    private static final String TABLE_NAME = "Profiler";
+
+    /* Every component being profiled. Only added to while the robot starts. */
+    private static final List<Component> COMPONENTS = new ArrayList<>();
+
+    /*
+     * The whole of each loop: the mode's init and periodic, robotPeriodic, and the
+     * dashboard updates after it.
+     */
+    private static final Component LOOP = component("loop");
+
+    /* The entries that overruns are reported through. */
+    private static final NetworkTableEntry OVERRUNS = table().getEntry("overruns");
+    private static final NetworkTableEntry OVERRUN_CULPRIT = table().getEntry("overrunCulprit");
+    private static final NetworkTableEntry OVERRUN_MS = table().getEntry("overrunMs");
+
+    /* The time at which the current loop started, in nanoseconds. */
+    private static long loopStart;
+
+    /* The number of loops since the timings were last published. */
+    private static int loopsSincePublish;
+
+    /* The number of loops that have run over their budget. */
+    private static long overruns;
+
+    /**
+     * Histogram counts durations in buckets whose width grows with the duration,
+     * so that every duration from a nanosecond up is kept to within an eighth of
+     * its value, in a fixed amount of memory.
+     */
+    public static class Histogram {
+        /* The number of buckets that each power of two is split into, as bits. */
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        /* The number of durations in each bucket. */
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+
+        /* The number of durations recorded, and the longest of them. */
+        private long total, max;
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration, in nanoseconds
+         */
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+
+            this.counts[bucket(value)]++;
+            this.total++;
+            this.max = Math.max(this.max, value);
+        }
+
+        /**
+         * Gets a percentile of the recorded durations. Accurate to within the width
+         * of its bucket, and never more than the longest duration.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the duration at the percentile, in nanoseconds, or 0 if none have
+         *         been recorded
+         */
+        public long getPercentile(double percentile) {
+            if (this.total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(this.total * percentile / 100.0));
+            long seen = 0;
+
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return Math.min(this.max, upperBound(i));
+                }
+            }
+
+            return this.max;
+        }
+
+        /**
+         * Gets the longest duration recorded.
+         *
+         * @return the longest duration, in nanoseconds
+         */
+        public long getMax() {
+            return this.max;
+        }
+
+        /**
+         * Gets the number of durations recorded.
+         *
+         * @return the number of durations
+         */
+        public long getCount() {
+            return this.total;
+        }
+
+        /**
+         * Forgets every duration recorded.
+         */
+        public void reset() {
+            Arrays.fill(this.counts, 0);
+            this.total = 0;
+            this.max = 0;
+        }
+
+        /**
+         * Finds the bucket that a duration belongs in.
+         */
+        static int bucket(long value) {
+            int magnitude = 63 - Long.numberOfLeadingZeros(value | 1);
+            if (magnitude < SUB_BUCKET_BITS) {
+                return (int) value;
+            }
+
+            int shift = magnitude - SUB_BUCKET_BITS;
+            return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * Finds the longest duration that belongs in a bucket.
+         */
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+
+            int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+            long lower = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+
+            return lower + (1L << shift) - 1;
+        }
+    }
+
+    /**
+     * Component is a single thing being profiled, such as a subsystem's periodic,
+     * with a histogram of how long it takes and the entries that it is published
+     * through.
+     */
+    public static class Component {
+        /* The name of the component. */
+        private final String name;
+
+        /* The durations recorded since the last publish. */
+        private final Histogram histogram = new Histogram();
+
+        /* The entries that the percentiles and the longest duration are published to. */
+        private final NetworkTableEntry p50, p99, max;
+
+        /* The time spent in the component during the current loop, in nanoseconds. */
+        private long loopNanos;
+
+        /**
+         * Initializes a new Component. Use Profiler.component to create one.
+         */
+        private Component(String name) {
+            NetworkTable table = table();
+
+            this.name = name;
+            this.p50 = table.getEntry(name + "/p50Ms");
+            this.p99 = table.getEntry(name + "/p99Ms");
+            this.max = table.getEntry(name + "/maxMs");
+        }
+
+        /**
+         * Gets the name of the component.
+         *
+         * @return the name of the component
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Records the time taken by one run of the component.
+         *
+         * @param start the time at which the run started, from System.nanoTime
+         */
+        public void stop(long start) {
+            long elapsed = System.nanoTime() - start;
+
+            this.histogram.record(elapsed);
+            this.loopNanos += elapsed;
+        }
+
+        /**
+         * Gets the durations recorded since the timings were last published.
+         *
+         * @return the component's histogram
+         */
+        public Histogram getHistogram() {
+            return this.histogram;
+        }
+
+        /**
+         * Publishes the timings recorded since the last publish, and starts over.
+         */
+        private void publish() {
+            this.p50.setDouble(this.histogram.getPercentile(50) / 1e6);
+            this.p99.setDouble(this.histogram.getPercentile(99) / 1e6);
+            this.max.setDouble(this.histogram.getMax() / 1e6);
+            this.histogram.reset();
+        }
+    }
+
+    /**
+     * ProfiledSubsystem is a subsystem whose periodic is timed. Subsystems
+     * should put their periodic work in profiledPeriodic instead.
+     */
+    public static abstract class ProfiledSubsystem extends SubsystemBase {
+        /* The timings of the subsystem's periodic. */
+        private final Component periodic;
+
+        /**
+         * Initializes a new ProfiledSubsystem, named after its class.
+         */
+        public ProfiledSubsystem() {
+            this.periodic = component(this.getClass().getSimpleName() + ".periodic");
+        }
+
+        @Override
+        public final void periodic() {
+            long start = System.nanoTime();
+            try {
+                this.profiledPeriodic();
+            } finally {
+                this.periodic.stop(start);
+            }
+        }
+
+        /**
+         * Called once per scheduler run, and timed.
+         */
+        protected void profiledPeriodic() {
+        }
+    }
+
+    /**
+     * ProfiledCommand wraps a command and times its initialize, execute and end.
+     * The wrapper, rather than the command, is what should be scheduled. It is
+     * given its own name, since several commands may share a class.
+     */
+    public static class ProfiledCommand implements Command {
+        /* The name that the command is timed and logged under. */
+        private final String name;
+
+        /* The command being timed. */
+        private final Command command;
+
+        /* The timings of each part of the command. */
+        private final Component initialize, execute, end;
+
+        /**
+         * Initializes a new ProfiledCommand.
+         *
+         * @param name    the name to time the command under, which must be unique
+         * @param command the command to time
+         */
+        public ProfiledCommand(String name, Command command) {
+            this.name = name;
+            this.command = command;
+            this.initialize = component(name + ".initialize");
+            this.execute = component(name + ".execute");
+            this.end = component(name + ".end");
+        }
+
+        @Override
+        public void initialize() {
+            long start = System.nanoTime();
+            try {
+                this.command.initialize();
+            } finally {
+                this.initialize.stop(start);
+            }
+        }
+
+        @Override
+        public void execute() {
+            long start = System.nanoTime();
+            try {
+                this.command.execute();
+            } finally {
+                this.execute.stop(start);
+            }
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            long start = System.nanoTime();
+            try {
+                this.command.end(interrupted);
+            } finally {
+                this.end.stop(start);
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return this.command.isFinished();
+        }
+
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return this.command.getRequirements();
+        }
+
+        @Override
+        public boolean runsWhenDisabled() {
+            return this.command.runsWhenDisabled();
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    /**
+     * Wraps a command so that its initialize, execute and end are timed.
+     *
+     * @param name    the name to time the command under, which must be unique
+     * @param command the command to time
+     * @return the wrapped command, which should be scheduled in its place
+     */
+    public static Command profile(String name, Command command) {
+        return new ProfiledCommand(name, command);
+    }
+
+    /**
+     * Gets the table that the timings are published to.
+     */
+    private static NetworkTable table() {
+        return NetworkTableInstance.getDefault().getTable(TABLE_NAME);
+    }
+
+    /**
+     * Creates a component to be profiled. Should only be used while the robot
+     * starts.
+     *
+     * @param name the name of the component
+     * @return the new component
+     */
+    public static synchronized Component component(String name) {
+        Component component = new Component(name);
+        COMPONENTS.add(component);
+
+        return component;
+    }
+
+    /**
+     * Marks the start of a robot loop. Should be called first thing in the
+     * robot's loopFunc, before the mode's own init and periodic.
+     */
+    public static void startLoop() {
+        for (int i = 0; i < COMPONENTS.size(); i++) {
+            COMPONENTS.get(i).loopNanos = 0;
+        }
+
+        loopStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a robot loop, reporting it if it ran over its budget, and
+     * publishes the timings about once a second. Should be called last thing in
+     * the robot's loopFunc.
+     */
+    public static void endLoop() {
+        LOOP.stop(loopStart);
+
+        if (LOOP.loopNanos > ProfilerConstants.LOOP_BUDGET_NANOS) {
+            overrun(LOOP.loopNanos);
+        }
+
+        if (++loopsSincePublish >= ProfilerConstants.PUBLISH_PERIOD_LOOPS) {
+            loopsSincePublish = 0;
+
+            for (int i = 0; i < COMPONENTS.size(); i++) {
+                COMPONENTS.get(i).publish();
+            }
+        }
+    }
+
+    /**
+     * Reports a loop that ran over its budget, blaming the component that took
+     * the longest during it.
+     */
+    private static void overrun(long loopNanos) {
+        Component culprit = null;
+        for (int i = 0; i < COMPONENTS.size(); i++) {
+            Component component = COMPONENTS.get(i);
+            if (component != LOOP && (culprit == null || component.loopNanos > culprit.loopNanos)) {
+                culprit = component;
+            }
+        }
+
+        overruns++;
+        OVERRUNS.setDouble(overruns);
+        OVERRUN_MS.setDouble(loopNanos / 1e6);
+
+        if (culprit != null) {
+            OVERRUN_CULPRIT.setString(culprit.getName());
+
+            if (overruns % ProfilerConstants.OVERRUN_WARNING_PERIOD == 1) {
+                DriverStation.reportWarning(String.format("Loop overran at %.1f ms; %s took %.1f ms",
+                        loopNanos / 1e6, culprit.getName(), culprit.loopNanos / 1e6), false);
+            }
+        }
+    }
+}
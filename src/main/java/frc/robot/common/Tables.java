@@ -0,0 +1,232 @@
+package frc.robot.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Defines a set of lookup tables, used to replace expensive or measured
+ * functions with interpolation between precomputed values.
+ */
+public class Tables {
+    /**
+     * Uniform is a lookup table of a function sampled at evenly spaced inputs.
+     * Looking up a value costs a multiplication and a linear interpolation.
+     */
+    public static class Uniform {
+        /* The smallest input contained in the table. */
+        private final double min;
+
+        /* The distance between each of the sampled inputs. */
+        private final double step;
+
+        /* The value of the function at each of the sampled inputs. */
+        private final double[] values;
+
+        /**
+         * Initializes a new Uniform table by sampling the given function.
+         *
+         * @param min      the smallest input that will be sampled
+         * @param max      the largest input that will be sampled
+         * @param step     the distance between each of the sampled inputs
+         * @param function the function that will be sampled
+         */
+        public Uniform(double min, double max, double step, DoubleUnaryOperator function) {
+            this.min = min;
+            this.step = step;
+            this.values = new double[(int) Math.ceil((max - min) / step) + 1];
+
+            for (int i = 0; i < this.values.length; i++) {
+                this.values[i] = function.applyAsDouble(min + i * step);
+            }
+        }
+
+        /**
+         * Looks up the value of the function at the given input, interpolating
+         * between the two closest samples. Inputs outside of the table are clamped
+         * to its edges.
+         *
+         * @param x the input to look up
+         * @return the approximate value of the function at the input
+         */
+        public double get(double x) {
+            double position = (x - this.min) / this.step;
+
+            if (!(position > 0)) {
+                return this.values[0];
+            } else if (position >= this.values.length - 1) {
+                return this.values[this.values.length - 1];
+            }
+
+            int index = (int) position;
+            double t = position - index;
+
+            return this.values[index] + (this.values[index + 1] - this.values[index]) * t;
+        }
+    }
+
+    /**
+     * Interpolating is a lookup table of one or more measured values at unevenly
+     * spaced, increasing keys. Looking up a value costs a binary search and a
+     * linear interpolation, and never allocates.
+     */
+    public static class Interpolating {
+        /* The name of each column of values, in order. */
+        private final String[] names;
+
+        /* The keys that the values were measured at, in increasing order. */
+        private final double[] keys;
+
+        /* The values of each column, at each of the keys. */
+        private final double[][] columns;
+
+        /**
+         * Initializes a new Interpolating table.
+         *
+         * @param names   the name of each column of values
+         * @param keys    the keys that the values were measured at, which must be
+         *                strictly increasing
+         * @param columns the values of each column at each of the keys
+         */
+        public Interpolating(String[] names, double[] keys, double[][] columns) {
+            if (keys.length == 0 || names.length != columns.length) {
+                throw new IllegalArgumentException("a table needs at least one key, and a name for each column");
+            }
+
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].length != keys.length) {
+                    throw new IllegalArgumentException("column " + names[i] + " doesn't have a value for each key");
+                }
+            }
+
+            for (int i = 1; i < keys.length; i++) {
+                if (!(keys[i] > keys[i - 1])) {
+                    throw new IllegalArgumentException("keys must be strictly increasing, but " + keys[i]
+                            + " follows " + keys[i - 1]);
+                }
+            }
+
+            this.names = names;
+            this.keys = keys;
+            this.columns = columns;
+        }
+
+        /**
+         * Reads a table from a comma-separated file. Blank lines and lines starting
+         * with a # are skipped. The first remaining line names the key and each
+         * column, and every line after it holds a key followed by its values.
+         *
+         * @param file the file to read
+         * @return the table held in the file
+         * @throws IOException if the file can't be read or isn't a valid table
+         */
+        public static Interpolating read(File file) throws IOException {
+            String[] header = null;
+            List<double[]> rows = new ArrayList<>();
+
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+
+                    String[] fields = line.split("\\s*,\\s*");
+                    if (header == null) {
+                        header = fields;
+                        continue;
+                    }
+
+                    if (fields.length != header.length) {
+                        throw new IOException(file + ": expected " + header.length + " fields in \"" + line + "\"");
+                    }
+
+                    double[] row = new double[fields.length];
+                    try {
+                        for (int i = 0; i < fields.length; i++) {
+                            row[i] = Double.parseDouble(fields[i]);
+                        }
+                    } catch (NumberFormatException e) {
+                        throw new IOException(file + ": " + e.getMessage(), e);
+                    }
+
+                    rows.add(row);
+                }
+            }
+
+            if (header == null || rows.isEmpty()) {
+                throw new IOException(file + " doesn't hold any values");
+            }
+
+            double[] keys = new double[rows.size()];
+            double[][] columns = new double[header.length - 1][rows.size()];
+
+            for (int i = 0; i < rows.size(); i++) {
+                keys[i] = rows.get(i)[0];
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c][i] = rows.get(i)[c + 1];
+                }
+            }
+
+            try {
+                return new Interpolating(Arrays.copyOfRange(header, 1, header.length), keys, columns);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + ": " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Finds the index of the column with the given name, so that it doesn't have
+         * to be searched for on every lookup.
+         *
+         * @param name the name of the column
+         * @return the index of the column, or -1 if the table doesn't have it
+         */
+        public int column(String name) {
+            for (int i = 0; i < this.names.length; i++) {
+                if (this.names[i].equals(name)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Looks up the value of a column at the given key, interpolating between the
+         * two closest keys. Keys outside of the table are clamped to its edges.
+         *
+         * @param column the index of the column
+         * @param key    the key to look up
+         * @return the approximate value of the column at the key
+         */
+        public double get(int column, double key) {
+            double[] values = this.columns[column];
+            int last = this.keys.length - 1;
+
+            if (!(key > this.keys[0])) {
+                return values[0];
+            } else if (key >= this.keys[last]) {
+                return values[last];
+            }
+
+            int index = Arrays.binarySearch(this.keys, key);
+            if (index >= 0) {
+                return values[index];
+            }
+
+            // The key lies between the keys either side of where it would be inserted
+            int upper = -index - 1;
+            int lower = upper - 1;
+            double t = (key - this.keys[lower]) / (this.keys[upper] - this.keys[lower]);
+
+            return values[lower] + (values[upper] - values[lower]) * t;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package frc.robot.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants.TelemetryConstants;
+
+/**
+ * Telemetry logs named signals, such as motor outputs and sensor readings, as
+ * fixed-width binary samples. Logging a sample only copies it into a lock-free
+ * ring in memory; a low-priority thread writes the ring out to a memory-mapped
+ * file on the USB stick, so that the robot loop never waits on the disk.
+ *
+ * <p>
+ * The log file starts with a header and the names of the signals, followed by
+ * a fixed number of samples that wraps around once it's full:
+ *
+ * <pre>
+ * header:  int magic, short version, short sample size, int capacity,
+ *          int names size, long samples written, long samples dropped
+ * names:   int count, then each name as a short length and UTF-8 bytes
+ * samples: double timestamp, double value, int signal
+ * </pre>
+ *
+ * The sample after the last one written is at (written % capacity).
+ */
+public class Telemetry {
+    /* Marks the start of a telemetry log file ("TLM1"). */
+    static final int MAGIC = 0x544c4d31;
+
+    /* The version of the file layout. */
+    static final short VERSION = 1;
+
+    /* The size of the header and of a single sample, in bytes. */
+    static final int HEADER_BYTES = 32;
+    static final int SAMPLE_BYTES = 20;
+
+    /* The offsets of the counts in the header that change as samples are written. */
+    private static final int WRITTEN_OFFSET = 16;
+    private static final int DROPPED_OFFSET = 24;
+
+    /* The name of every signal, by id. Only added to while the robot starts. */
+    private static final List<String> NAMES = new ArrayList<>();
+
+    /* The samples waiting to be written. */
+    private static final Ring RING = new Ring(TelemetryConstants.RING_CAPACITY);
+
+    /* The signal for each command whose transitions are logged. */
+    private static final Map<Command, Signal> COMMANDS = new IdentityHashMap<>();
+
+    /* The thread writing samples to the log file, once started. */
+    private static Writer writer;
+
+    /**
+     * Signal is a single named value, such as a motor's output, that is logged
+     * over time. Any thread may log to a signal.
+     */
+    public static class Signal {
+        /* The signal's id, which is its index in the names of the log. */
+        private final int id;
+
+        /**
+         * Initializes a new Signal. Use Telemetry.signal to create one.
+         */
+        private Signal(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Logs the signal's value as of now.
+         *
+         * @param value the value of the signal
+         */
+        public void log(double value) {
+            RING.offer(this.id, Clock.now(), value);
+        }
+
+        /**
+         * Logs the signal's value as of now, as 1 for true and 0 for false.
+         *
+         * @param value the value of the signal
+         */
+        public void log(boolean value) {
+            RING.offer(this.id, Clock.now(), value ? 1.0 : 0.0);
+        }
+
+        /**
+         * Logs the signal's value as of the given time, such as when a sensor reading
+         * was taken.
+         *
+         * @param timestamp the time of the value, in seconds
+         * @param value     the value of the signal
+         */
+        public void log(double timestamp, double value) {
+            RING.offer(this.id, timestamp, value);
+        }
+    }
+
+    /**
+     * Ring is a fixed-size, lock-free queue of samples that any number of threads
+     * may write to, and a single thread reads from. If the reader falls so far
+     * behind that the ring fills up, new samples are dropped and counted.
+     */
+    static class Ring {
+        /* The time, signal and value of each sample. */
+        private final double[] timestamps, values;
+        private final int[] signals;
+
+        /*
+         * One more than the sequence number of the sample last published in each
+         * slot. A writer claims a sequence number by advancing the tail, fills its slot,
+         * and then publishes it here, so the reader never sees a half-written sample.
+         */
+        private final AtomicLongArray published;
+
+        /* Masks a sequence number into an index into the arrays. */
+        private final int mask;
+
+        /* The sequence number of the next sample to be read, and to be claimed. */
+        private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+        /* The number of samples dropped because the ring was full. */
+        private final AtomicLong dropped = new AtomicLong();
+
+        /**
+         * Initializes a new Ring.
+         *
+         * @param capacity the number of samples that the ring can hold, which must be
+         *                 a power of two
+         */
+        Ring(int capacity) {
+            if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+                throw new IllegalArgumentException("capacity must be a power of two, not " + capacity);
+            }
+
+            this.timestamps = new double[capacity];
+            this.values = new double[capacity];
+            this.signals = new int[capacity];
+            this.published = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Adds a sample to the ring.
+         *
+         * @return whether there was room for the sample
+         */
+        boolean offer(int signal, double timestamp, double value) {
+            long sequence;
+            do {
+                sequence = this.tail.get();
+                if (sequence - this.head.get() > this.mask) {
+                    this.dropped.incrementAndGet();
+                    return false;
+                }
+            } while (!this.tail.compareAndSet(sequence, sequence + 1));
+
+            int index = (int) (sequence & this.mask);
+            this.timestamps[index] = timestamp;
+            this.values[index] = value;
+            this.signals[index] = signal;
+            this.published.lazySet(index, sequence + 1);
+
+            return true;
+        }
+
+        /**
+         * Copies every published sample, oldest first, into the given file and
+         * removes it from the ring. Must only be called from the reading thread.
+         *
+         * @return the number of samples copied
+         */
+        int drain(LogFile file) {
+            long head = this.head.get();
+            int count = 0;
+
+            while (true) {
+                int index = (int) (head & this.mask);
+                if (this.published.get(index) != head + 1) {
+                    break;
+                }
+
+                file.write(this.timestamps[index], this.values[index], this.signals[index]);
+                head++;
+                count++;
+
+                // Free the slot only once it has been read
+                this.head.lazySet(head);
+            }
+
+            return count;
+        }
+
+        /**
+         * Gets the number of samples that were dropped because the ring was full.
+         *
+         * @return the number of samples dropped
+         */
+        long getDropped() {
+            return this.dropped.get();
+        }
+    }
+
+    /**
+     * LogFile is the memory-mapped log file that samples are written to.
+     */
+    static class LogFile {
+        /* The mapping of the whole file. */
+        private final MappedByteBuffer buffer;
+
+        /* The offset of the first sample, and the number of samples that fit. */
+        private final int samplesOffset, capacity;
+
+        /* The number of samples written, and of names written. */
+        private long written;
+        private int namesWritten;
+
+        /**
+         * Creates a log file of the given size, and maps it.
+         */
+        LogFile(File file, int capacity) throws IOException {
+            this.samplesOffset = HEADER_BYTES + TelemetryConstants.NAMES_BYTES;
+            this.capacity = capacity;
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                long size = (long) this.samplesOffset + (long) capacity * SAMPLE_BYTES;
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putShort(4, VERSION);
+            this.buffer.putShort(6, (short) SAMPLE_BYTES);
+            this.buffer.putInt(8, capacity);
+            this.buffer.putInt(12, TelemetryConstants.NAMES_BYTES);
+            this.buffer.putInt(HEADER_BYTES, 0);
+        }
+
+        /**
+         * Writes a sample after the last one, wrapping around once the file is full.
+         */
+        void write(double timestamp, double value, int signal) {
+            int offset = this.samplesOffset + (int) (this.written % this.capacity) * SAMPLE_BYTES;
+
+            this.buffer.putDouble(offset, timestamp);
+            this.buffer.putDouble(offset + 8, value);
+            this.buffer.putInt(offset + 16, signal);
+            this.written++;
+        }
+
+        /**
+         * Writes the names of any signals added since the last call, and the counts
+         * in the header. The counts are written last, so that they never cover a
+         * sample that isn't there yet.
+         */
+        void commit(List<String> names, long dropped) {
+            if (names.size() > this.namesWritten) {
+                this.writeNames(names);
+            }
+
+            this.buffer.putLong(DROPPED_OFFSET, dropped);
+            this.buffer.putLong(WRITTEN_OFFSET, this.written);
+        }
+
+        /**
+         * Rewrites the names of the signals, leaving out any that don't fit.
+         */
+        private void writeNames(List<String> names) {
+            int offset = HEADER_BYTES + 4;
+            int end = HEADER_BYTES + TelemetryConstants.NAMES_BYTES;
+            int count = 0;
+
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (offset + 2 + bytes.length > end) {
+                    DriverStation.reportWarning("No room in the telemetry log for signal " + name, false);
+                    break;
+                }
+
+                this.buffer.putShort(offset, (short) bytes.length);
+                for (int i = 0; i < bytes.length; i++) {
+                    this.buffer.put(offset + 2 + i, bytes[i]);
+                }
+
+                offset += 2 + bytes.length;
+                count++;
+            }
+
+            this.buffer.putInt(HEADER_BYTES, count);
+            this.namesWritten = names.size();
+        }
+
+        /**
+         * Makes sure that everything written so far is on the disk.
+         */
+        void force() {
+            this.buffer.force();
+        }
+    }
+
+    /**
+     * Writer is the low-priority thread that moves samples from the ring into the
+     * log file.
+     */
+    private static class Writer extends Thread {
+        /* The file that samples are written to. */
+        private final LogFile file;
+
+        /* Set to have the file synced to the disk on the next pass. */
+        private volatile boolean forceRequested;
+
+        /**
+         * Initializes a new Writer for the given file.
+         */
+        Writer(LogFile file) {
+            super("Telemetry");
+            this.file = file;
+
+            this.setDaemon(true);
+            this.setPriority(Thread.MIN_PRIORITY);
+        }
+
+        @Override
+        public void run() {
+            long lastForce = System.nanoTime();
+
+            try {
+                while (!this.isInterrupted()) {
+                    this.writePending();
+
+                    long now = System.nanoTime();
+                    if (this.forceRequested || now - lastForce >= TelemetryConstants.FORCE_PERIOD_MS * 1_000_000L) {
+                        this.forceRequested = false;
+                        this.file.force();
+                        lastForce = now;
+                    }
+
+                    try {
+                        Thread.sleep(TelemetryConstants.FLUSH_PERIOD_MS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+
+                this.writePending();
+                this.file.force();
+            } catch (RuntimeException e) {
+                // Never let logging take down the robot
+                DriverStation.reportError("Telemetry stopped: " + e.getMessage(), false);
+            }
+        }
+
+        /**
+         * Writes every waiting sample to the file.
+         */
+        private void writePending() {
+            RING.drain(this.file);
+
+            synchronized (Telemetry.class) {
+                this.file.commit(NAMES, RING.getDropped());
+            }
+        }
+    }
+
+    /**
+     * Creates a signal to be logged. Should only be used while the robot starts,
+     * or where it won't be logged often.
+     *
+     * @param name the name of the signal
+     * @return the new signal
+     */
+    public static synchronized Signal signal(String name) {
+        NAMES.add(name);
+
+        return new Signal(NAMES.size() - 1);
+    }
+
+    /**
+     * Logs each command as it starts, finishes or is interrupted, as 1, 0 and -1
+     * on a signal named after the command. Commands that share a name are told
+     * apart by a number after it.
+     *
+     * @param scheduler the scheduler running the commands
+     */
+    public static void logCommands(CommandScheduler scheduler) {
+        scheduler.onCommandInitialize(command -> commandSignal(command).log(1.0));
+        scheduler.onCommandFinish(command -> commandSignal(command).log(0.0));
+        scheduler.onCommandInterrupt(command -> commandSignal(command).log(-1.0));
+    }
+
+    /**
+     * Gets the signal that a command's transitions are logged to. Only called from
+     * the scheduler's thread.
+     */
+    private static Signal commandSignal(Command command) {
+        return COMMANDS.computeIfAbsent(command, key -> signal(uniqueName("command/" + key.getName())));
+    }
+
+    /**
+     * Makes a signal name unique, by numbering it if it is already taken.
+     */
+    private static synchronized String uniqueName(String name) {
+        String unique = name;
+        for (int i = 2; NAMES.contains(unique); i++) {
+            unique = name + "#" + i;
+        }
+
+        return unique;
+    }
+
+    /**
+     * Opens a new log file and starts writing samples to it. The file is put on
+     * the USB stick if there is one, and with the robot's other logs if not. Only
+     * the newest few log files are kept, and none is made if the disk is too full
+     * for it.
+     */
+    public static synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+
+        int capacity = TelemetryConstants.FILE_RECORDS;
+        long size = HEADER_BYTES + TelemetryConstants.NAMES_BYTES + (long) capacity * SAMPLE_BYTES;
+
+        try {
+            writer = new Writer(new LogFile(LogFiles.create("telemetry", size), capacity));
+            writer.start();
+        } catch (IOException e) {
+            // Samples just pile up in the ring and are dropped
+            DriverStation.reportError("Failed to open telemetry log: " + e.getMessage(), false);
+        }
+    }
+
+    /**
+     * Asks for everything logged so far to be synced to the disk, without waiting
+     * for it to happen.
+     */
+    public static synchronized void flush() {
+        if (writer != null) {
+            writer.forceRequested = true;
+        }
+    }
+
+    /**
+     * Gets the number of samples that were dropped because they couldn't be
+     * written quickly enough.
+     *
+     * @return the number of samples dropped
+     */
+    public static long getDropped() {
+        return RING.getDropped();
+    }
+}
@@ -0,0 +1,130 @@
+package frc.robot.common;
+
+/**
+ * TimeSeries holds a fixed number of the most recent timestamped samples of a
+ * value in a primitive ring buffer, and interpolates between them in order to
+ * look up what the value was at some point in the past.
+ */
+public class TimeSeries {
+    /* The timestamps of each of the samples, in seconds. */
+    private final double[] timestamps;
+
+    /* The value of each of the samples. */
+    private final double[] values;
+
+    /* The slot holding the oldest sample. */
+    private int oldest;
+
+    /* The number of samples currently stored in the series. */
+    private int size;
+
+    /**
+     * Initializes a new TimeSeries holding up to the given number of samples.
+     *
+     * @param capacity the number of samples that will be kept
+     */
+    public TimeSeries(int capacity) {
+        this.timestamps = new double[capacity];
+        this.values = new double[capacity];
+        this.oldest = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Removes all of the samples from the series.
+     */
+    public void clear() {
+        this.oldest = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Gets the number of samples stored in the series.
+     *
+     * @return the number of samples in the series
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Records a new sample, replacing the oldest sample if the series is full.
+     * Samples must be added in order of increasing timestamp.
+     *
+     * @param timestamp the time at which the value was sampled, in seconds
+     * @param value     the sampled value
+     */
+    public void add(double timestamp, double value) {
+        int slot;
+
+        if (this.size == this.values.length) {
+            slot = this.oldest;
+            this.oldest = (this.oldest + 1) % this.values.length;
+        } else {
+            slot = (this.oldest + this.size) % this.values.length;
+            this.size++;
+        }
+
+        this.timestamps[slot] = timestamp;
+        this.values[slot] = value;
+    }
+
+    /**
+     * Gets the value of the series at the given time, linearly interpolating
+     * between the two samples surrounding it. Times outside of the recorded range
+     * are clamped to the oldest or newest sample.
+     *
+     * @param timestamp the time at which the value should be looked up, in seconds
+     * @return the value at the given time, or 0 if the series is empty
+     */
+    public double get(double timestamp) {
+        if (this.size == 0) {
+            return 0.0;
+        }
+
+        // Binary search for the last sample taken at or before the given time
+        int low = 0;
+        int high = this.size - 1;
+
+        if (timestamp >= this.timestamps[this.slot(high)]) {
+            return this.values[this.slot(high)];
+        } else if (timestamp <= this.timestamps[this.slot(low)]) {
+            return this.values[this.slot(low)];
+        }
+
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+
+            if (this.timestamps[this.slot(middle)] <= timestamp) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+
+        // Interpolate between the samples on either side of the given time
+        int before = this.slot(low);
+        int after = this.slot(high);
+        double span = this.timestamps[after] - this.timestamps[before];
+        double t = span > 0 ? (timestamp - this.timestamps[before]) / span : 1.0;
+
+        return this.values[before] + (this.values[after] - this.values[before]) * t;
+    }
+
+    /**
+     * Gets the most recently recorded value.
+     *
+     * @return the newest value in the series, or 0 if the series is empty
+     */
+    public double getLatest() {
+        return this.size == 0 ? 0.0 : this.values[this.slot(this.size - 1)];
+    }
+
+    /**
+     * Converts an index, counted from the oldest sample, into a slot in the ring
+     * buffer.
+     */
+    private int slot(int index) {
+        return (this.oldest + index) % this.values.length;
+    }
+}
@@ -0,0 +1,298 @@
+package frc.robot.common;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.geometry.Pose2d;
+import edu.wpi.first.wpilibj.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.kinematics.DifferentialDriveKinematics;
+import edu.wpi.first.wpilibj.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.trajectory.TrajectoryConfig;
+import edu.wpi.first.wpilibj.trajectory.TrajectoryGenerator;
+import frc.robot.Constants.AutonomousConstants;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Defines the paths that the robot can follow, and a cache of the trajectories
+ * generated from them. Generating a trajectory takes far too long to do when
+ * autonomous starts, so each is written to a compact binary file in the deploy
+ * directory, either at build time or on the first boot that needs it, and
+ * memory-mapped back in when the robot starts.
+ */
+public class Trajectories {
+    /* Identifies a trajectory cache file. */
+    private static final int MAGIC = 0x54524a31;
+
+    /* The version of the cache file format. */
+    private static final int VERSION = 1;
+
+    /* The size of the file's header, in bytes. */
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    /*
+     * The size of each state in the file, in bytes: its time, velocity,
+     * acceleration, x, y, angle and curvature.
+     */
+    private static final int STATE_BYTES = 7 * 8;
+
+    /* The directory, inside of the deploy directory, that holds the cache. */
+    private static final String CACHE_DIRECTORY = "paths";
+
+    /**
+     * Path describes a path through a set of waypoints, which a trajectory is
+     * generated from.
+     */
+    public static class Path {
+        /* The name of the path, which its cache file is named after. */
+        private final String name;
+
+        /* Whether the robot drives the path backwards. */
+        private final boolean reversed;
+
+        /* The x and y, in meters, and angle, in degrees, of each waypoint. */
+        private final double[][] waypoints;
+
+        /**
+         * Initializes a new Path through the given waypoints.
+         *
+         * @param name      the name of the path
+         * @param reversed  whether the robot should drive the path backwards
+         * @param waypoints the x and y, in meters, and counter-clockwise angle, in
+         *                  degrees, of each waypoint
+         */
+        public Path(String name, boolean reversed, double[][] waypoints) {
+            this.name = name;
+            this.reversed = reversed;
+            this.waypoints = waypoints;
+        }
+
+        /**
+         * Gets the name of the path.
+         *
+         * @return the name of the path
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Generates a trajectory along the path, within the robot's velocity and
+         * acceleration limits. This is slow, and shouldn't be done while the robot is
+         * enabled.
+         *
+         * @return the generated trajectory
+         */
+        public Trajectory generate() {
+            List<Pose2d> poses = new ArrayList<>(this.waypoints.length);
+            for (double[] waypoint : this.waypoints) {
+                poses.add(new Pose2d(waypoint[0], waypoint[1], Rotation2d.fromDegrees(waypoint[2])));
+            }
+
+            TrajectoryConfig cfg = new TrajectoryConfig(AutonomousConstants.MAX_VELOCITY_METERS_PER_SECOND,
+                    AutonomousConstants.MAX_ACCELERATION_METERS_PER_SECOND_SQ)
+                            .setKinematics(new DifferentialDriveKinematics(DriveConstants.TRACK_WIDTH_METERS))
+                            .setReversed(this.reversed);
+
+            return TrajectoryGenerator.generateTrajectory(poses, cfg);
+        }
+
+        /**
+         * Calculates a fingerprint of everything that the generated trajectory
+         * depends on, so that a stale cache file can be told apart from a current one.
+         *
+         * @return the fingerprint of the path
+         */
+        long fingerprint() {
+            long hash = this.name.hashCode();
+            hash = hash * 31 + (this.reversed ? 1 : 0);
+
+            for (double[] waypoint : this.waypoints) {
+                for (double value : waypoint) {
+                    hash = hash * 31 + Double.doubleToLongBits(value);
+                }
+            }
+
+            hash = hash * 31 + Double.doubleToLongBits(AutonomousConstants.MAX_VELOCITY_METERS_PER_SECOND);
+            hash = hash * 31 + Double.doubleToLongBits(AutonomousConstants.MAX_ACCELERATION_METERS_PER_SECOND_SQ);
+            hash = hash * 31 + Double.doubleToLongBits(DriveConstants.TRACK_WIDTH_METERS);
+
+            return hash;
+        }
+    }
+
+    /**
+     * Loads the trajectory for the given path from the cache in the deploy
+     * directory. If the path hasn't been cached, or has changed since it was, the
+     * trajectory is generated and written to the cache for next time.
+     *
+     * @param path the path whose trajectory should be loaded
+     * @return the trajectory along the path
+     */
+    public static Trajectory load(Path path) {
+        File file = cacheFile(Filesystem.getDeployDirectory(), path);
+
+        try {
+            Trajectory cached = read(file, path.fingerprint());
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IOException e) {
+            DriverStation.reportWarning("Unable to read cached trajectory " + file + ": " + e.getMessage(), false);
+        }
+
+        // Generate the trajectory now, and keep it so that the next boot doesn't have to
+        Trajectory trajectory = path.generate();
+
+        try {
+            write(file, path.fingerprint(), trajectory);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Unable to cache trajectory " + file + ": " + e.getMessage(), false);
+        }
+
+        return trajectory;
+    }
+
+    /**
+     * Gets the cache file for the given path.
+     *
+     * @param deployDirectory the deploy directory that the cache is kept in
+     * @param path            the path whose cache file should be found
+     * @return the cache file for the path
+     */
+    static File cacheFile(File deployDirectory, Path path) {
+        return new File(new File(deployDirectory, CACHE_DIRECTORY), path.getName() + ".traj");
+    }
+
+    /**
+     * Reads a trajectory from a cache file by memory-mapping it.
+     *
+     * @param file        the cache file to read
+     * @param fingerprint the fingerprint that the path currently has
+     * @return the cached trajectory, or null if the file doesn't exist or is stale
+     * @throws IOException if the file can't be read
+     */
+    static Trajectory read(File file, long fingerprint) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != fingerprint) {
+                return null;
+            }
+
+            int count = buffer.getInt();
+            if (count <= 0 || buffer.remaining() != (long) count * STATE_BYTES) {
+                return null;
+            }
+
+            List<Trajectory.State> states = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                states.add(readState(buffer));
+            }
+
+            return new Trajectory(states);
+        }
+    }
+
+    /**
+     * Reads a single state from a cache file.
+     */
+    private static Trajectory.State readState(ByteBuffer buffer) {
+        double time = buffer.getDouble();
+        double velocity = buffer.getDouble();
+        double acceleration = buffer.getDouble();
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        double angle = buffer.getDouble();
+        double curvature = buffer.getDouble();
+
+        return new Trajectory.State(time, velocity, acceleration, new Pose2d(x, y, new Rotation2d(angle)), curvature);
+    }
+
+    /**
+     * Writes a trajectory to a cache file. The file is written next to its final
+     * location and then moved into place, so that a reader never sees half of it.
+     *
+     * @param file        the cache file to write
+     * @param fingerprint the fingerprint of the path the trajectory follows
+     * @param trajectory  the trajectory to write
+     * @throws IOException if the file can't be written
+     */
+    static void write(File file, long fingerprint, Trajectory trajectory) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("unable to create " + directory);
+        }
+
+        File temporary = new File(directory, file.getName() + ".tmp");
+        List<Trajectory.State> states = trajectory.getStates();
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(states.size());
+
+            for (Trajectory.State state : states) {
+                out.writeDouble(state.timeSeconds);
+                out.writeDouble(state.velocityMetersPerSecond);
+                out.writeDouble(state.accelerationMetersPerSecondSq);
+                out.writeDouble(state.poseMeters.getTranslation().getX());
+                out.writeDouble(state.poseMeters.getTranslation().getY());
+                out.writeDouble(state.poseMeters.getRotation().getRadians());
+                out.writeDouble(state.curvatureRadPerMeter);
+            }
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Generates every autonomous path and writes it to the cache in the given
+     * deploy directory. Run at build time, so that the cache is deployed along
+     * with the code.
+     *
+     * @param args the deploy directory to write to; src/main/deploy by default
+     * @throws IOException if a cache file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        File deployDirectory = new File(args.length > 0 ? args[0] : "src/main/deploy");
+
+        for (Path path : AutonomousConstants.PATHS) {
+            File file = cacheFile(deployDirectory, path);
+
+            if (read(file, path.fingerprint()) != null) {
+                System.out.printf("%s is up to date%n", file);
+                continue;
+            }
+
+            Trajectory trajectory = path.generate();
+            write(file, path.fingerprint(), trajectory);
+
+            System.out.printf("%s: %d states, %.2f s%n", file, trajectory.getStates().size(),
+                    trajectory.getTotalTimeSeconds());
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package frc.robot.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.TelemetryConstants;
+import frc.robot.common.Clock;
+import frc.robot.common.LogFiles;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.VisionSubsystem;
+import frc.robot.subsystems.VisionSubsystem.VisionFrame;
+
+/**
+ * VisionLog defines a compact binary log of the vision subsystem's frames and
+ * the drivetrain's outputs, written once per robot loop, so that vision
+ * alignment can be replayed off of the robot.
+ */
+public class VisionLog {
+    /* Marks the start of a vision log file ("VIS1"). */
+    static final int MAGIC = 0x56495331;
+
+    /* The version of the record layout. */
+    static final short VERSION = 2;
+
+    /**
+     * Record holds the data recorded during a single robot loop.
+     */
+    public static class Record {
+        /* The time at which the record was taken, in seconds. */
+        public double timestamp;
+
+        /* Whether or not the vision command was running. */
+        public boolean active;
+
+        /* The sequence number of the latest frame from the limelight. */
+        public long sequence;
+
+        /* The raw values of the latest frame from the limelight. */
+        public double tv, tx, ty, ta, tl;
+
+        /* The time at which the latest frame was captured, in seconds. */
+        public double captureTimestamp;
+
+        /* The estimated distance to the target in the latest frame, in meters. */
+        public double distance;
+
+        /*
+         * The continuous heading of the robot when the drivetrain was last driven, in
+         * degrees, which may have been from the control loop partway through the
+         * robot loop.
+         */
+        public double heading;
+
+        /* The values that the drivetrain was last driven with, from that heading. */
+        public double leftOutput, rightOutput;
+
+        /**
+         * Builds a frame from the values stored in the record.
+         *
+         * @return the latest frame from the limelight, as of the record
+         */
+        public VisionFrame toFrame() {
+            return new VisionFrame(this.sequence, this.tv, this.tx, this.ty, this.ta, this.tl,
+                    this.captureTimestamp, this.distance);
+        }
+
+        /**
+         * Writes the record to the given stream.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeDouble(this.timestamp);
+            out.writeBoolean(this.active);
+            out.writeLong(this.sequence);
+            out.writeDouble(this.tv);
+            out.writeDouble(this.tx);
+            out.writeDouble(this.ty);
+            out.writeDouble(this.ta);
+            out.writeDouble(this.tl);
+            out.writeDouble(this.captureTimestamp);
+            out.writeDouble(this.distance);
+            out.writeDouble(this.heading);
+            out.writeDouble(this.leftOutput);
+            out.writeDouble(this.rightOutput);
+        }
+
+        /**
+         * Reads the record from the given stream.
+         */
+        void read(DataInputStream in) throws IOException {
+            this.timestamp = in.readDouble();
+            this.active = in.readBoolean();
+            this.sequence = in.readLong();
+            this.tv = in.readDouble();
+            this.tx = in.readDouble();
+            this.ty = in.readDouble();
+            this.ta = in.readDouble();
+            this.tl = in.readDouble();
+            this.captureTimestamp = in.readDouble();
+            this.distance = in.readDouble();
+            this.heading = in.readDouble();
+            this.leftOutput = in.readDouble();
+            this.rightOutput = in.readDouble();
+        }
+    }
+
+    /**
+     * Recorder records the vision subsystem and the drivetrain on every robot loop
+     * while the robot is enabled. The robot loop only copies each record into a
+     * lock-free ring; a low-priority thread writes them out, so that the loop
+     * never waits on the disk. Once the log file reaches its size limit, recording
+     * stops.
+     */
+    public static class Recorder implements Closeable {
+        /* The subsystems and command being recorded. */
+        private final DriveSubsystem drivetrain;
+        private final VisionSubsystem vision;
+        private final Command visionCommand;
+
+        /* The records waiting to be written, filled by the robot loop. */
+        private final Record[] ring;
+
+        /* Masks a sequence number into an index into the ring. */
+        private final int mask;
+
+        /* The sequence number of the next record to be written, and to be filled. */
+        private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+        /* The number of records dropped because the writer fell behind. */
+        private final AtomicLong dropped = new AtomicLong();
+
+        /* The thread writing records to the log file, once started. */
+        private Writer writer;
+
+        /* Whether or not writing has stopped, in which case recording stops too. */
+        private volatile boolean stopped;
+
+        /**
+         * Writer is the low-priority thread that moves records from the ring into
+         * the log file.
+         */
+        private class Writer extends Thread {
+            /* The stream that records are written to. */
+            private final DataOutputStream out;
+
+            /* Set to have the file flushed to the disk on the next pass. */
+            private volatile boolean flushRequested;
+
+            Writer(DataOutputStream out) {
+                super("VisionLog");
+                this.out = out;
+
+                this.setDaemon(true);
+                this.setPriority(Thread.MIN_PRIORITY);
+            }
+
+            @Override
+            public void run() {
+                try {
+                    while (!this.isInterrupted() && !Recorder.this.stopped) {
+                        this.writePending();
+
+                        if (this.flushRequested) {
+                            this.flushRequested = false;
+                            this.out.flush();
+                        }
+
+                        try {
+                            Thread.sleep(TelemetryConstants.FLUSH_PERIOD_MS);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+
+                    this.writePending();
+                    this.out.close();
+                } catch (IOException e) {
+                    // Never let logging take down the robot
+                    DriverStation.reportError("Failed to record vision log: " + e.getMessage(), false);
+                }
+
+                Recorder.this.stopped = true;
+            }
+
+            /**
+             * Writes every waiting record to the file, up to the file's size limit.
+             */
+            private void writePending() throws IOException {
+                long head = Recorder.this.head.get();
+
+                while (head != Recorder.this.tail.get()) {
+                    if (this.out.size() >= TelemetryConstants.VISION_LOG_MAX_BYTES) {
+                        if (!Recorder.this.stopped) {
+                            DriverStation.reportWarning("Vision log is full; recording stopped", false);
+                            Recorder.this.stopped = true;
+                        }
+                        return;
+                    }
+
+                    Recorder.this.ring[(int) (head & Recorder.this.mask)].write(this.out);
+                    head++;
+
+                    // Free the slot only once it has been written
+                    Recorder.this.head.lazySet(head);
+                }
+            }
+        }
+
+        /**
+         * Initializes a new Recorder for the given subsystems.
+         *
+         * @param drivetrain    the drivetrain whose outputs are recorded
+         * @param vision        the vision subsystem whose frames are recorded
+         * @param visionCommand the command that uses the vision subsystem
+         */
+        public Recorder(DriveSubsystem drivetrain, VisionSubsystem vision, Command visionCommand) {
+            this.drivetrain = drivetrain;
+            this.vision = vision;
+            this.visionCommand = visionCommand;
+
+            this.ring = new Record[TelemetryConstants.VISION_LOG_RING_CAPACITY];
+            for (int i = 0; i < this.ring.length; i++) {
+                this.ring[i] = new Record();
+            }
+            this.mask = this.ring.length - 1;
+        }
+
+        /**
+         * Opens a new log file in the log directory, and starts writing records to
+         * it. Should be called while the robot starts; until then, nothing is
+         * recorded.
+         */
+        public synchronized void start() {
+            if (this.writer != null) {
+                return;
+            }
+
+            try {
+                File file = LogFiles.create("vision", TelemetryConstants.VISION_LOG_MAX_BYTES);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+
+                this.writer = new Writer(out);
+                this.writer.start();
+            } catch (IOException e) {
+                DriverStation.reportError("Failed to open vision log: " + e.getMessage(), false);
+                this.stopped = true;
+            }
+        }
+
+        /**
+         * Records the current state of the vision subsystem and the drivetrain. Should
+         * be called once per loop, after the command scheduler has run.
+         */
+        public void record() {
+            if (this.writer == null || this.stopped || !DriverStation.getInstance().isEnabled()) {
+                return;
+            }
+
+            long tail = this.tail.get();
+            if (tail - this.head.get() > this.mask) {
+                this.dropped.incrementAndGet();
+                return;
+            }
+
+            Record record = this.ring[(int) (tail & this.mask)];
+            VisionFrame frame = this.vision.getLatestFrame();
+
+            record.timestamp = Clock.now();
+            record.active = this.visionCommand.isScheduled();
+            record.sequence = frame.sequence();
+            record.tv = frame.tv();
+            record.tx = frame.tx();
+            record.ty = frame.ty();
+            record.ta = frame.ta();
+            record.tl = frame.latency();
+            record.captureTimestamp = frame.timestamp();
+            record.distance = frame.distance();
+
+            // The control loop may drive between reads, so take the outputs along with
+            // the heading they were driven from
+            synchronized (this.drivetrain) {
+                record.heading = this.drivetrain.getLastDriveHeading();
+                record.leftOutput = this.drivetrain.getLastLeftOutput();
+                record.rightOutput = this.drivetrain.getLastRightOutput();
+            }
+
+            this.tail.lazySet(tail + 1);
+        }
+
+        /**
+         * Asks for every record so far to be flushed to the log file, without
+         * waiting for it to happen.
+         */
+        public void flush() {
+            if (this.writer != null) {
+                this.writer.flushRequested = true;
+            }
+        }
+
+        /**
+         * Gets the number of records that were dropped because they couldn't be
+         * written quickly enough.
+         *
+         * @return the number of records dropped
+         */
+        public long getDropped() {
+            return this.dropped.get();
+        }
+
+        /**
+         * Stops recording, and waits for every record so far to be written and the
+         * log file closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (this.writer == null) {
+                return;
+            }
+
+            this.writer.interrupt();
+            try {
+                this.writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reader reads the records of a vision log, in the order that they were
+     * written.
+     */
+    public static class Reader implements Closeable {
+        /* The stream that records are read from. */
+        private final DataInputStream in;
+
+        /**
+         * Opens the given vision log.
+         *
+         * @param file the log file to read
+         * @throws IOException if the file can't be read, or isn't a vision log
+         */
+        public Reader(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+
+            if (this.in.readInt() != MAGIC || this.in.readShort() != VERSION) {
+                this.in.close();
+
+                throw new IOException(file + " is not a vision log");
+            }
+        }
+
+        /**
+         * Reads the next record in the log into the given record.
+         *
+         * @param record the record that will be filled
+         * @return whether or not a record was read; false at the end of the log
+         * @throws IOException if the log can't be read
+         */
+        public boolean next(Record record) throws IOException {
+            try {
+                record.read(this.in);
+
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package frc.robot.replay;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.commands.MoveToReflectiveTargetCommand;
+import frc.robot.commands.MoveToReflectiveTargetCommand.Configuration;
+import frc.robot.common.Clock;
+import frc.robot.common.Filters;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.VisionSubsystem;
+import frc.robot.subsystems.VisionSubsystem.LimelightConfiguration;
+import frc.robot.subsystems.VisionSubsystem.VisionFrame;
+
+/**
+ * VisionReplay feeds a recorded vision log back through the
+ * MoveToReflectiveTargetCommand on the desktop, as fast as possible, and
+ * reports how long the command took to lock on to the target in each run.
+ *
+ * <p>
+ * The replay is open loop: the robot's recorded heading is replayed as-is, so
+ * output changes are compared against what the robot did, not simulated. The
+ * heading is the one that the robot last drove from, even when that was on the
+ * control loop, so that the replayed turn sees what the robot's turn saw.
+ *
+ * <p>
+ * Usage: {@code ./gradlew replayVision -Plog=vision-123.bin [-Pestimator=kalman]}
+ */
+public final class VisionReplay {
+    /**
+     * ReplayDrivetrain stands in for the drivetrain, reporting the recorded
+     * heading and capturing the command's outputs.
+     */
+    static class ReplayDrivetrain extends DriveSubsystem {
+        /* The heading of the robot in the current record. */
+        double heading;
+
+        /* The values that the command last drove with. */
+        double left, right;
+
+        @Override
+        public double getContinuousHeading() {
+            return this.heading;
+        }
+
+        @Override
+        public void drive(Type driveType, double left, double right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double getLastLeftOutput() {
+            return this.left;
+        }
+
+        @Override
+        public double getLastRightOutput() {
+            return this.right;
+        }
+    }
+
+    /**
+     * ReplayVision stands in for the vision subsystem, reporting the recorded
+     * frames.
+     */
+    static class ReplayVision extends VisionSubsystem {
+        /* The latest frame, as of the current record. */
+        VisionFrame frame;
+
+        ReplayVision() {
+            super(LimelightConfiguration.getDefault());
+            this.frame = new VisionFrame(0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+        }
+
+        @Override
+        public VisionFrame getLatestFrame() {
+            return this.frame;
+        }
+
+        @Override
+        public void enableLimelight() {
+        }
+
+        @Override
+        public void disableLimelight() {
+        }
+    }
+
+    /**
+     * Replays the vision log named by the first argument. The second argument, if
+     * given, selects the estimator (median, alphabeta, or kalman).
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1 || args[0].isEmpty()) {
+            System.err.println("usage: VisionReplay <log> [estimator]");
+            System.exit(1);
+        }
+
+        // The subsystems need the HAL and NetworkTables, even though they don't touch
+        // any hardware
+        HAL.initialize(500, 0);
+
+        // Time only moves forward as records are replayed
+        double[] now = { 0.0 };
+        Clock.use(() -> now[0]);
+
+        ReplayDrivetrain drivetrain = new ReplayDrivetrain();
+        ReplayVision vision = new ReplayVision();
+        Configuration cfg = Configuration.getDefault();
+
+        if (args.length > 1) {
+            cfg.useEstimator(Filters.EstimatorType.fromString(args[1]));
+        }
+
+        MoveToReflectiveTargetCommand command = new MoveToReflectiveTargetCommand(drivetrain, vision, cfg);
+        VisionLog.Record record = new VisionLog.Record();
+
+        // Statistics for the current run of the command, and for the whole log
+        boolean running = false;
+        double runStart = 0.0, lockTime = Double.NaN, squaredError = 0.0;
+        int nRuns = 0, nLocked = 0, nRecords = 0, nFrames = 0;
+        long wallStart = System.nanoTime();
+
+        try (VisionLog.Reader reader = new VisionLog.Reader(new File(args[0]))) {
+            while (reader.next(record)) {
+                now[0] = record.timestamp;
+                nRecords++;
+
+                // Only replace the frame when the limelight published a new one
+                if (record.sequence != vision.frame.sequence()) {
+                    vision.frame = record.toFrame();
+                }
+
+                drivetrain.heading = record.heading;
+                drivetrain.periodic();
+
+                if (record.active && !running) {
+                    // The vision command was started on the robot
+                    command.initialize();
+                    running = true;
+                    runStart = record.timestamp;
+                    lockTime = Double.NaN;
+                    squaredError = 0.0;
+                    nFrames = 0;
+                    nRuns++;
+                } else if (!record.active && running) {
+                    // The vision command stopped on the robot
+                    if (Double.isNaN(lockTime)) {
+                        command.end(true);
+                    }
+
+                    report(nRuns, record.timestamp - runStart, lockTime, squaredError, nFrames);
+                    running = false;
+                }
+
+                // Keep running the replayed command until it finishes, or the run ends
+                if (running && Double.isNaN(lockTime)) {
+                    command.execute();
+
+                    double leftError = drivetrain.left - record.leftOutput;
+                    double rightError = drivetrain.right - record.rightOutput;
+                    squaredError += leftError * leftError + rightError * rightError;
+                    nFrames++;
+
+                    if (command.isFinished()) {
+                        command.end(false);
+                        lockTime = record.timestamp - runStart;
+                        nLocked++;
+                    }
+                }
+            }
+        }
+
+        if (running) {
+            report(nRuns, record.timestamp - runStart, lockTime, squaredError, nFrames);
+        }
+
+        System.out.printf("replayed %d records (%d runs, %d locked) in %.1f ms%n", nRecords, nRuns, nLocked,
+                (System.nanoTime() - wallStart) / 1e6);
+
+        HAL.shutdown();
+    }
+
+    /**
+     * Prints the results of a single run of the vision command.
+     */
+    private static void report(int run, double recordedDuration, double lockTime, double squaredError, int nFrames) {
+        System.out.printf("run %d: recorded %.3f s, replayed %s, output rms difference %.4f%n", run,
+                recordedDuration, Double.isNaN(lockTime) ? "no lock" : String.format("lock in %.3f s", lockTime),
+                nFrames > 0 ? Math.sqrt(squaredError / (2 * nFrames)) : 0.0);
+    }
+}
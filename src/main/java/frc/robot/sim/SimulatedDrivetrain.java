@@ -0,0 +1,160 @@
+package frc.robot.sim;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants.SimulationConstants;
+import frc.robot.subsystems.DriveSubsystem;
+
+/**
+ * SimulatedDrivetrain tracks where the robot would be on the field by
+ * integrating the outputs that the drivetrain was last driven with. It treats
+ * each side of the drivetrain as moving at a speed proportional to its output,
+ * which is enough to close the loop around the vision command off of the robot.
+ */
+public class SimulatedDrivetrain {
+    /* The drivetrain whose outputs move the simulated robot. */
+    private final DriveSubsystem drivetrain;
+
+    /*
+     * The position of the robot on the field, in meters. Read from the odometry
+     * thread as well as the main loop.
+     */
+    private volatile double x, y;
+
+    /*
+     * The direction that the robot faces, in radians counter-clockwise from the
+     * field's X axis. Not wrapped, so that the heading stays continuous.
+     */
+    private volatile double angle;
+
+    /* The distance that each side of the robot has travelled, in meters. */
+    private volatile double leftDistance, rightDistance;
+
+    /**
+     * Initializes a new SimulatedDrivetrain at the starting pose given in the
+     * simulation constants.
+     *
+     * @param drivetrain the drivetrain whose outputs should move the robot
+     */
+    public SimulatedDrivetrain(DriveSubsystem drivetrain) {
+        this.drivetrain = drivetrain;
+        this.reset();
+    }
+
+    /**
+     * Moves the robot back to its starting pose.
+     */
+    public void reset() {
+        this.x = SimulationConstants.STARTING_X_METERS;
+        this.y = SimulationConstants.STARTING_Y_METERS;
+        this.angle = Math.toRadians(SimulationConstants.STARTING_ANGLE_DEGREES);
+        this.leftDistance = 0.0;
+        this.rightDistance = 0.0;
+    }
+
+    /**
+     * Moves the robot according to the outputs the drivetrain was last driven
+     * with.
+     *
+     * @param dt the time that has passed since the last update, in seconds
+     */
+    public void update(double dt) {
+        // The motor controllers stop driving while the robot is disabled
+        if (!DriverStation.getInstance().isEnabled()) {
+            return;
+        }
+
+        double left = this.drivetrain.getLastLeftOutput();
+        double right = this.drivetrain.getLastRightOutput();
+
+        // Differential drive takes a rotation and then a speed, where a positive
+        // rotation speeds up the left side and slows down the right
+        if (this.drivetrain.getLastDriveType() == DriveSubsystem.Type.DIFFERENTIAL) {
+            double speed = right;
+            double rotation = left;
+
+            left = speed + rotation;
+            right = speed - rotation;
+        } else if (this.drivetrain.getLastDriveType() == DriveSubsystem.Type.VELOCITY) {
+            // Velocity drive asks for meters per second, which the talons would track
+            left /= SimulationConstants.MAX_SPEED_METERS_PER_SECOND;
+            right /= SimulationConstants.MAX_SPEED_METERS_PER_SECOND;
+        }
+
+        double leftSpeed = clamp(left) * SimulationConstants.MAX_SPEED_METERS_PER_SECOND;
+        double rightSpeed = clamp(right) * SimulationConstants.MAX_SPEED_METERS_PER_SECOND;
+
+        double forward = (leftSpeed + rightSpeed) / 2.0;
+        double turn = (rightSpeed - leftSpeed) / SimulationConstants.TRACK_WIDTH_METERS;
+
+        // Move along the arc at the average heading over the step
+        double midAngle = this.angle + turn * dt / 2.0;
+        this.x += forward * Math.cos(midAngle) * dt;
+        this.y += forward * Math.sin(midAngle) * dt;
+        this.angle += turn * dt;
+
+        this.leftDistance += leftSpeed * dt;
+        this.rightDistance += rightSpeed * dt;
+    }
+
+    /**
+     * Gets the X position of the robot on the field.
+     *
+     * @return the X position of the robot, in meters
+     */
+    public double getX() {
+        return this.x;
+    }
+
+    /**
+     * Gets the Y position of the robot on the field.
+     *
+     * @return the Y position of the robot, in meters
+     */
+    public double getY() {
+        return this.y;
+    }
+
+    /**
+     * Gets the direction that the robot faces on the field.
+     *
+     * @return the angle of the robot, in radians counter-clockwise from the field's
+     *         X axis
+     */
+    public double getAngle() {
+        return this.angle;
+    }
+
+    /**
+     * Gets the distance that the left side of the robot has travelled.
+     *
+     * @return the distance travelled by the left side, in meters
+     */
+    public double getLeftDistance() {
+        return this.leftDistance;
+    }
+
+    /**
+     * Gets the distance that the right side of the robot has travelled.
+     *
+     * @return the distance travelled by the right side, in meters
+     */
+    public double getRightDistance() {
+        return this.rightDistance;
+    }
+
+    /**
+     * Gets the continuous heading that the navx would report for the robot.
+     *
+     * @return the heading of the robot, in degrees clockwise since it started
+     */
+    public double getHeading() {
+        return -Math.toDegrees(this.angle - Math.toRadians(SimulationConstants.STARTING_ANGLE_DEGREES));
+    }
+
+    /**
+     * Limits an output to the range a motor controller accepts.
+     */
+    private static double clamp(double output) {
+        return Math.max(-1.0, Math.min(1.0, output));
+    }
+}
@@ -0,0 +1,245 @@
+package frc.robot.sim;
+
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Preferences;
+import frc.robot.Constants;
+import frc.robot.Constants.SimulationConstants;
+import frc.robot.common.Clock;
+import frc.robot.common.Patterns;
+import frc.robot.subsystems.VisionSubsystem.LEDMode;
+
+/**
+ * SimulatedLimelight stands in for the limelight in desktop simulation. It
+ * works out where the reflective target would appear to a camera on the
+ * simulated robot, and publishes tv, tx, ty, ta and tl to the local limelight
+ * table, just like the real camera does over the network.
+ */
+public class SimulatedLimelight {
+    /**
+     * The noise, latency and dropout of the simulated limelight.
+     */
+    public static class Configuration implements Patterns.PreferenceChangeable<Configuration> {
+        /* The group that the simulated limelight's preferences are kept in. */
+        private static final frc.robot.common.Preferences.Group PREFERENCES = frc.robot.common.Preferences.Group
+                .named("simulatedLimelight");
+
+        /*
+         * The standard deviation of the noise added to tx and ty, in degrees, and to
+         * ta, as a fraction of its value.
+         */
+        DoubleSupplier txNoise, tyNoise, taNoise;
+
+        /* The time between a frame being captured and published, in milliseconds. */
+        DoubleSupplier latency;
+
+        /* The chance that a visible target is missing from a frame. */
+        DoubleSupplier dropoutProbability;
+
+        /**
+         * Initializes a new Configuration with the given parameters.
+         *
+         * @param txNoise            the standard deviation of the noise in tx
+         * @param tyNoise            the standard deviation of the noise in ty
+         * @param taNoise            the standard deviation of the noise in ta, as a
+         *                           fraction of ta
+         * @param latency            the total latency of each frame, in milliseconds
+         * @param dropoutProbability the chance that a visible target is dropped
+         */
+        public Configuration(DoubleSupplier txNoise, DoubleSupplier tyNoise, DoubleSupplier taNoise,
+                DoubleSupplier latency, DoubleSupplier dropoutProbability) {
+            this.txNoise = txNoise;
+            this.tyNoise = tyNoise;
+            this.taNoise = taNoise;
+            this.latency = latency;
+            this.dropoutProbability = dropoutProbability;
+        }
+
+        /**
+         * Gets a configuration using the values in the simulation constants.
+         *
+         * @return the default configuration
+         */
+        public static Configuration getDefault() {
+            return new Configuration(() -> SimulationConstants.DEFAULT_TX_NOISE_DEGREES,
+                    () -> SimulationConstants.DEFAULT_TY_NOISE_DEGREES,
+                    () -> SimulationConstants.DEFAULT_TA_NOISE_FRACTION, () -> SimulationConstants.DEFAULT_LATENCY_MS,
+                    () -> SimulationConstants.DEFAULT_DROPOUT_PROBABILITY);
+        }
+
+        /**
+         * Applies the preferences defined in the SmartDashboard preferences pane to the
+         * configurable object.
+         *
+         * @param prefs the instance of the preferences class that should be used to
+         *              configure the configurable class from
+         */
+        @Override
+        public Configuration applyPreferences(Preferences prefs) {
+            Configuration defaultConfig = Configuration.getDefault();
+
+            this.txNoise = PREFERENCES.doublePref("txNoise", defaultConfig.txNoise.getAsDouble(), 0.0, 10.0);
+            this.tyNoise = PREFERENCES.doublePref("tyNoise", defaultConfig.tyNoise.getAsDouble(), 0.0, 10.0);
+            this.taNoise = PREFERENCES.doublePref("taNoise", defaultConfig.taNoise.getAsDouble(), 0.0, 1.0);
+            this.latency = PREFERENCES.doublePref("latency", defaultConfig.latency.getAsDouble(), 0.0, 1000.0);
+            this.dropoutProbability = PREFERENCES.doublePref("dropout",
+                    defaultConfig.dropoutProbability.getAsDouble(), 0.0, 1.0);
+
+            return this;
+        }
+    }
+
+    /* The number of captured frames that can be waiting to be published. */
+    private static final int MAX_PENDING_FRAMES = 64;
+
+    /* The simulated robot that the camera is mounted on. */
+    private final SimulatedDrivetrain robot;
+
+    /* The noise, latency and dropout of the camera. */
+    private final Configuration cfg;
+
+    /* The source of the camera's noise and dropouts. */
+    private final Random random;
+
+    /* The entries that the camera publishes to, and the LED mode it reads. */
+    private final NetworkTableEntry tvEntry, txEntry, tyEntry, taEntry, tlEntry, ledModeEntry;
+
+    /*
+     * Frames that have been captured but not yet published, as a ring buffer of
+     * the time at which each is due and its tv, tx, ty, ta and tl values.
+     */
+    private final double[] dueTimes;
+    private final double[][] pendingFrames;
+
+    /* The slot of the oldest pending frame, and the number of pending frames. */
+    private int oldest, pending;
+
+    /**
+     * Initializes a new SimulatedLimelight, publishing to the default
+     * NetworkTables instance.
+     *
+     * @param robot the simulated robot that the camera is mounted on
+     * @param cfg   the noise, latency and dropout of the camera
+     */
+    public SimulatedLimelight(SimulatedDrivetrain robot, Configuration cfg) {
+        this.robot = robot;
+        this.cfg = cfg;
+        this.random = new Random(SimulationConstants.NOISE_SEED);
+
+        NetworkTable limelightTable = NetworkTableInstance.getDefault().getTable("limelight");
+        this.tvEntry = limelightTable.getEntry("tv");
+        this.txEntry = limelightTable.getEntry("tx");
+        this.tyEntry = limelightTable.getEntry("ty");
+        this.taEntry = limelightTable.getEntry("ta");
+        this.tlEntry = limelightTable.getEntry("tl");
+        this.ledModeEntry = limelightTable.getEntry("ledMode");
+
+        this.dueTimes = new double[MAX_PENDING_FRAMES];
+        this.pendingFrames = new double[MAX_PENDING_FRAMES][5];
+    }
+
+    /**
+     * Captures a frame from the robot's current pose, and publishes every frame
+     * whose latency has passed. Should be called once per robot loop, after the
+     * simulated drivetrain has been moved.
+     */
+    public void update() {
+        double now = Clock.now();
+
+        this.capture(now);
+
+        while (this.pending > 0 && this.dueTimes[this.oldest] <= now) {
+            this.publish(this.pendingFrames[this.oldest]);
+
+            this.oldest = (this.oldest + 1) % MAX_PENDING_FRAMES;
+            this.pending--;
+        }
+    }
+
+    /**
+     * Works out where the target appears from the robot's current pose, and queues
+     * the frame to be published once its latency has passed.
+     *
+     * @param now the time at which the frame is captured, in seconds
+     */
+    private void capture(double now) {
+        // Drop the oldest frame if publishing has fallen far behind
+        if (this.pending == MAX_PENDING_FRAMES) {
+            this.oldest = (this.oldest + 1) % MAX_PENDING_FRAMES;
+            this.pending--;
+        }
+
+        int slot = (this.oldest + this.pending) % MAX_PENDING_FRAMES;
+        double latency = Math.max(this.cfg.latency.getAsDouble(), Constants.VisionConstants.IMAGE_CAPTURE_LATENCY_MS);
+        double[] frame = this.pendingFrames[slot];
+
+        this.dueTimes[slot] = now + latency / 1000.0;
+        this.pending++;
+
+        // The limelight reports zeros whenever it can't see the target
+        frame[0] = 0.0;
+        frame[1] = 0.0;
+        frame[2] = 0.0;
+        frame[3] = 0.0;
+        frame[4] = latency - Constants.VisionConstants.IMAGE_CAPTURE_LATENCY_MS;
+
+        int ledMode = this.ledModeEntry.getNumber(LEDMode.DEFAULT.value()).intValue();
+        if (ledMode != LEDMode.ON.value() || this.random.nextDouble() < this.cfg.dropoutProbability.getAsDouble()) {
+            return;
+        }
+
+        // Find the target relative to the camera, which sits at the robot's center
+        double dx = SimulationConstants.TARGET_X_METERS - this.robot.getX();
+        double dy = SimulationConstants.TARGET_Y_METERS - this.robot.getY();
+        double distance = Math.hypot(dx, dy);
+
+        double cameraAngle = this.robot.getAngle() + Math.toRadians(SimulationConstants.CAMERA_YAW_DEGREES);
+        double bearing = Math.atan2(dy, dx);
+
+        // The target faces along the X axis, and can only be seen from in front
+        double viewAngle = Math.toDegrees(Math.atan2(-dy, -dx));
+        if (distance <= 0 || Math.abs(viewAngle) > SimulationConstants.TARGET_VISIBILITY_DEGREES) {
+            return;
+        }
+
+        // tx is positive to the right of the crosshair, which is clockwise
+        double tx = -Math.toDegrees(Math.IEEEremainder(bearing - cameraAngle, 2 * Math.PI));
+        double ty = Math.toDegrees(Math.atan2(
+                Constants.VisionConstants.TARGET_HEIGHT_METERS - Constants.VisionConstants.CAMERA_HEIGHT_METERS,
+                distance)) - Constants.VisionConstants.CAMERA_MOUNT_ANGLE_DEGREES;
+
+        if (Math.abs(tx) > SimulationConstants.CAMERA_HORIZONTAL_FOV_DEGREES / 2
+                || Math.abs(ty) > SimulationConstants.CAMERA_VERTICAL_FOV_DEGREES / 2) {
+            return;
+        }
+
+        // ta is the percentage of the image taken up by the target
+        double imageArea = 4 * distance * distance
+                * Math.tan(Math.toRadians(SimulationConstants.CAMERA_HORIZONTAL_FOV_DEGREES / 2))
+                * Math.tan(Math.toRadians(SimulationConstants.CAMERA_VERTICAL_FOV_DEGREES / 2));
+        double ta = 100.0 * SimulationConstants.TARGET_AREA_SQUARE_METERS * Math.cos(Math.toRadians(viewAngle))
+                / imageArea;
+
+        frame[0] = 1.0;
+        frame[1] = tx + this.random.nextGaussian() * this.cfg.txNoise.getAsDouble();
+        frame[2] = ty + this.random.nextGaussian() * this.cfg.tyNoise.getAsDouble();
+        frame[3] = Math.max(0.0, ta * (1.0 + this.random.nextGaussian() * this.cfg.taNoise.getAsDouble()));
+    }
+
+    /**
+     * Publishes a captured frame to the limelight table.
+     *
+     * @param frame the tv, tx, ty, ta and tl values of the frame
+     */
+    private void publish(double[] frame) {
+        this.tvEntry.setDouble(frame[0]);
+        this.txEntry.setDouble(frame[1]);
+        this.tyEntry.setDouble(frame[2]);
+        this.taEntry.setDouble(frame[3]);
+        this.tlEntry.setDouble(frame[4]);
+    }
+}
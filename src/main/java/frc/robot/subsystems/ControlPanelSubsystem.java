@@ -8,11 +8,11 @@
 package frc.robot.subsystems;
 
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.ControlPanelConstants;
 import frc.robot.common.Preferences;
+import frc.robot.common.Profiler;
 
-public class ControlPanelSubsystem extends SubsystemBase implements Preferences.Group {
+public class ControlPanelSubsystem extends Profiler.ProfiledSubsystem implements Preferences.Group {
     WPI_TalonSRX controlPanelMotor;
 
     /**
@@ -33,7 +33,7 @@ public class ControlPanelSubsystem extends SubsystemBase implements Preferences.
     }
 
     @Override
-    public void periodic() {
+    protected void profiledPeriodic() {
         // This method will be called once per scheduler run
 
     }
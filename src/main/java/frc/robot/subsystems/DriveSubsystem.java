@@ -2,28 +2,38 @@ package frc.robot.subsystems;
 
 import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
+import com.ctre.phoenix.motorcontrol.TalonFXFeedbackDevice;
 import com.ctre.phoenix.motorcontrol.TalonFXInvertType;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 import com.kauailabs.navx.frc.AHRS;
 
+import java.util.function.DoubleSupplier;
+
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.SPI;
 import edu.wpi.first.wpilibj.SpeedControllerGroup;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
 import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.NavigationConstants;
+import frc.robot.common.Clock;
+import frc.robot.common.Coalescing;
 import frc.robot.common.Preferences;
+import frc.robot.common.Profiler;
+import frc.robot.common.Telemetry;
+import frc.robot.common.TimeSeries;
 
 /**
  * DriveSubsystem is a subsystem that handles control of the drivetrain.
  */
-public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
+public class DriveSubsystem extends Profiler.ProfiledSubsystem implements Preferences.Group {
     /**
-     * Specifies a type of drive for the subsystem. Either differential (arcade) or
-     * rhino.
+     * Specifies a type of drive for the subsystem. Either differential (arcade),
+     * rhino, or velocity, which drives each side at a speed in meters per second
+     * using the talons' closed velocity loops.
      */
     public static enum Type {
-        DIFFERENTIAL, RHINO
+        DIFFERENTIAL, RHINO, VELOCITY
     }
 
     public static class MotorControllerConfiguration {
@@ -40,11 +50,13 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
          */
         public MotorControllerConfiguration(int frontLeftControllerPort, int frontRightControllerPort,
                 int backLeftControllerPort, int backRightControllerPort) {
-            // Initialize each of the talons
-            this.frontLeftController = new WPI_TalonFX(frontLeftControllerPort);
-            this.frontRightController = new WPI_TalonFX(frontRightControllerPort);
-            this.backLeftController = new WPI_TalonFX(backLeftControllerPort);
-            this.backRightController = new WPI_TalonFX(backRightControllerPort);
+            // Initialize each of the talons, skipping any demands and follows that
+            // wouldn't change anything
+            Coalescing.Counter counter = Coalescing.counter("drive");
+            this.frontLeftController = new Coalescing.CoalescingTalonFX(frontLeftControllerPort, counter);
+            this.frontRightController = new Coalescing.CoalescingTalonFX(frontRightControllerPort, counter);
+            this.backLeftController = new Coalescing.CoalescingTalonFX(backLeftControllerPort, counter);
+            this.backRightController = new Coalescing.CoalescingTalonFX(backRightControllerPort, counter);
 
             // In order to maintain compatibility with navx-utilizing code, we must stipulate
             // how the wheels will interact with each other
@@ -59,6 +71,36 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
             this.frontRightController.configFactoryDefault();
             this.backLeftController.configFactoryDefault();
             this.backRightController.configFactoryDefault();
+
+            // Close the velocity loop on the talons leading each side, using their
+            // integrated encoders
+            this.configureVelocityLoop(this.frontLeftController);
+            this.configureVelocityLoop(this.frontRightController);
+        }
+
+        /**
+         * Configures a talon to measure its velocity with its integrated encoder, and
+         * loads the velocity drive gains into its slot.
+         *
+         * @param controller the talon that should be configured
+         */
+        private void configureVelocityLoop(WPI_TalonFX controller) {
+            controller.configSelectedFeedbackSensor(TalonFXFeedbackDevice.IntegratedSensor, 0,
+                    DriveConstants.CONFIG_TIMEOUT_MS);
+
+            controller.config_kP(DriveConstants.VELOCITY_SLOT, DriveConstants.VELOCITY_P,
+                    DriveConstants.CONFIG_TIMEOUT_MS);
+            controller.config_kI(DriveConstants.VELOCITY_SLOT, DriveConstants.VELOCITY_I,
+                    DriveConstants.CONFIG_TIMEOUT_MS);
+            controller.config_kD(DriveConstants.VELOCITY_SLOT, DriveConstants.VELOCITY_D,
+                    DriveConstants.CONFIG_TIMEOUT_MS);
+            controller.config_kF(DriveConstants.VELOCITY_SLOT, DriveConstants.VELOCITY_F,
+                    DriveConstants.CONFIG_TIMEOUT_MS);
+            controller.selectProfileSlot(DriveConstants.VELOCITY_SLOT, 0);
+
+            // Send the encoder's position as often as odometry reads it
+            controller.setStatusFramePeriod(StatusFrameEnhanced.Status_2_Feedback0,
+                    NavigationConstants.ENCODER_STATUS_PERIOD_MS, DriveConstants.CONFIG_TIMEOUT_MS);
         }
 
         /**
@@ -82,6 +124,18 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
                 return;
             }
 
+            if (driveType.equals(Type.VELOCITY)) {
+                // Treat each speed as meters per second, which the talons measure in pulses
+                // per 100ms
+                this.frontLeftController.set(ControlMode.Velocity, toTalonVelocity(leftPercentageSpeed));
+                this.backLeftController.follow(this.frontLeftController);
+
+                this.frontRightController.set(ControlMode.Velocity, toTalonVelocity(rightPercentageSpeed));
+                this.backRightController.follow(this.frontRightController);
+
+                return;
+            }
+
             this.frontLeftController.set(leftPercentageSpeed);
             this.backLeftController.follow(this.frontLeftController);
 
@@ -90,6 +144,28 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
         }
     }
 
+    /**
+     * Converts a speed in meters per second into the talons' units of encoder
+     * pulses per 100ms.
+     *
+     * @param metersPerSecond the speed to convert
+     * @return the speed in talon units
+     */
+    static double toTalonVelocity(double metersPerSecond) {
+        return metersPerSecond / DriveConstants.METERS_PER_PULSE / 10.0;
+    }
+
+    /**
+     * Converts a speed in the talons' units of encoder pulses per 100ms into meters
+     * per second.
+     *
+     * @param talonVelocity the speed to convert, in talon units
+     * @return the speed in meters per second
+     */
+    static double fromTalonVelocity(double talonVelocity) {
+        return talonVelocity * 10.0 * DriveConstants.METERS_PER_PULSE;
+    }
+
     /* The motor controllers that will be used in the drive subsystem. */
     private final MotorControllerConfiguration motorControllers;
 
@@ -102,6 +178,29 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
     /* The navx interface. */
     private final AHRS ahrs;
 
+    /* Recent headings of the robot, used to look up where the robot was facing. */
+    private final TimeSeries headingHistory;
+
+    /*
+     * The left and right values that the drivetrain was last driven with, and the
+     * robot's heading at the time. Written from whichever thread drove last.
+     */
+    private volatile double lastLeftOutput, lastRightOutput, lastDriveHeading;
+
+    /* The outputs and heading, logged on every loop. */
+    private final Telemetry.Signal leftOutputSignal = Telemetry.signal("drive/leftOutput");
+    private final Telemetry.Signal rightOutputSignal = Telemetry.signal("drive/rightOutput");
+    private final Telemetry.Signal headingSignal = Telemetry.signal("drive/heading");
+
+    /* The type of drive that the drivetrain was last driven with. */
+    private volatile Type lastDriveType;
+
+    /*
+     * Stand in for the navx and the encoders in simulation, or null when the real
+     * sensors are used.
+     */
+    private DoubleSupplier simulatedHeading, simulatedLeftDistance, simulatedRightDistance;
+
     /**
      * Initializes a new DriveSubsystem.
      */
@@ -111,7 +210,36 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
         this.hasShifted = false;
         this.gearShifter = new DoubleSolenoid(Constants.DriveConstants.GEAR_SHIFT_DEPLOY,
                 Constants.DriveConstants.GEAR_SHIFT_RETRACT);
-        this.ahrs = new AHRS(SPI.Port.kMXP);
+        this.ahrs = new AHRS(SPI.Port.kMXP, NavigationConstants.NAVX_UPDATE_RATE_HZ);
+        this.headingHistory = new TimeSeries(DriveConstants.HEADING_HISTORY_SIZE);
+        this.lastDriveType = Type.DIFFERENTIAL;
+    }
+
+    /**
+     * Initializes a new DriveSubsystem without any hardware. Used to stand in for
+     * the drivetrain off of the robot; subclasses must override every method that
+     * touches the motor controllers, the gear shifter, or the navx.
+     */
+    protected DriveSubsystem() {
+        this.motorControllers = null;
+        this.hasShifted = false;
+        this.gearShifter = null;
+        this.ahrs = null;
+        this.headingHistory = new TimeSeries(DriveConstants.HEADING_HISTORY_SIZE);
+        this.lastDriveType = Type.DIFFERENTIAL;
+    }
+
+    @Override
+    protected void profiledPeriodic() {
+        double now = Clock.now();
+        double heading = this.getContinuousHeading();
+
+        // Record the robot's heading so that older sensor readings can be related to it
+        this.headingHistory.add(now, heading);
+
+        this.leftOutputSignal.log(now, this.lastLeftOutput);
+        this.rightOutputSignal.log(now, this.lastRightOutput);
+        this.headingSignal.log(now, heading);
     }
 
     /**
@@ -131,8 +259,114 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
      * @param percentageSpeeds the percentage speed values to drive with
      */
     public void drive(Type driveType, double[] percentageSpeeds) {
+        this.drive(driveType, percentageSpeeds[0], percentageSpeeds[1]);
+    }
+
+    /**
+     * Drives the robot with the given left and right values. For velocity drive,
+     * these are the speeds of each side in meters per second. Controllers on the
+     * control loop drive from their own thread, so a controller that must not
+     * override a newer drive can hold the drivetrain's lock while it checks.
+     *
+     * @param driveType the manner in which the robot should drive
+     * @param left      the left (or, for differential drive, rotation) value
+     * @param right     the right (or, for differential drive, speed) value
+     */
+    public synchronized void drive(Type driveType, double left, double right) {
+        this.lastLeftOutput = left;
+        this.lastRightOutput = right;
+        this.lastDriveHeading = this.getContinuousHeading();
+        this.lastDriveType = driveType;
+
         // Use the preferred drive to drive the robot
-        this.motorControllers.drive(driveType, percentageSpeeds[0], percentageSpeeds[1]);
+        this.motorControllers.drive(driveType, left, right);
+    }
+
+    /**
+     * Gets the speed of the left side of the drivetrain, as measured by the front
+     * left talon's integrated encoder.
+     *
+     * @return the speed of the left side, in meters per second
+     */
+    public double getLeftVelocity() {
+        return fromTalonVelocity(this.motorControllers.frontLeftController.getSelectedSensorVelocity());
+    }
+
+    /**
+     * Gets the speed of the right side of the drivetrain, as measured by the front
+     * right talon's integrated encoder.
+     *
+     * @return the speed of the right side, in meters per second
+     */
+    public double getRightVelocity() {
+        return fromTalonVelocity(this.motorControllers.frontRightController.getSelectedSensorVelocity());
+    }
+
+    /**
+     * Gets the distance that the left side of the drivetrain has travelled, as
+     * measured by the front left talon's integrated encoder.
+     *
+     * @return the distance travelled by the left side, in meters
+     */
+    public double getLeftDistance() {
+        if (this.simulatedLeftDistance != null) {
+            return this.simulatedLeftDistance.getAsDouble();
+        }
+
+        return this.motorControllers.frontLeftController.getSelectedSensorPosition()
+                * DriveConstants.METERS_PER_PULSE;
+    }
+
+    /**
+     * Gets the distance that the right side of the drivetrain has travelled, as
+     * measured by the front right talon's integrated encoder.
+     *
+     * @return the distance travelled by the right side, in meters
+     */
+    public double getRightDistance() {
+        if (this.simulatedRightDistance != null) {
+            return this.simulatedRightDistance.getAsDouble();
+        }
+
+        return this.motorControllers.frontRightController.getSelectedSensorPosition()
+                * DriveConstants.METERS_PER_PULSE;
+    }
+
+    /**
+     * Gets the left value that the drivetrain was last driven with.
+     *
+     * @return the last left (or, for differential drive, rotation) value
+     */
+    public double getLastLeftOutput() {
+        return this.lastLeftOutput;
+    }
+
+    /**
+     * Gets the right value that the drivetrain was last driven with.
+     *
+     * @return the last right (or, for differential drive, speed) value
+     */
+    public double getLastRightOutput() {
+        return this.lastRightOutput;
+    }
+
+    /**
+     * Gets the heading of the robot when the drivetrain was last driven. Hold the
+     * drivetrain's lock to read it along with the outputs it was driven with.
+     *
+     * @return the heading as of the last drive, in degrees
+     */
+    public double getLastDriveHeading() {
+        return this.lastDriveHeading;
+    }
+
+    /**
+     * Gets the type of drive that the drivetrain was last driven with.
+     *
+     * @return the last drive type
+     */
+    public Type getLastDriveType() {
+        return this.lastDriveType;
     }
 
     public void manualDrive2(double speed, double rotation) {
@@ -163,10 +397,60 @@ public class DriveSubsystem extends SubsystemBase implements Preferences.Group {
     }
 
     public double getHeading() {
-        return Math.IEEEremainder(ahrs.getAngle(), 360) * (DriveConstants.GYRO_REVERSED ? -1.0 : 1.0);
+        return Math.IEEEremainder(this.getContinuousHeading(), 360);
+    }
+
+    /**
+     * Gets the heading of the robot in degrees, without wrapping around at 180
+     * degrees. Positive values are clockwise.
+     *
+     * @return the accumulated heading of the robot
+     */
+    public double getContinuousHeading() {
+        if (this.simulatedHeading != null) {
+            return this.simulatedHeading.getAsDouble();
+        }
+
+        return ahrs.getAngle() * (DriveConstants.GYRO_REVERSED ? -1.0 : 1.0);
+    }
+
+    /**
+     * Gets the continuous heading of the robot at some recent point in time.
+     *
+     * @param timestamp the FPGA time, in seconds, at which the heading should be
+     *                  looked up
+     * @return the continuous heading of the robot at the given time
+     */
+    public double getHeadingAt(double timestamp) {
+        // Without any history, the current heading is the best guess we have
+        if (this.headingHistory.size() == 0) {
+            return this.getContinuousHeading();
+        }
+
+        return this.headingHistory.get(timestamp);
+    }
+
+    /**
+     * Replaces the navx and the encoders with the given sources. Should only be
+     * used in simulation, where the real sensors never move.
+     *
+     * @param heading       the continuous heading of the simulated robot, in
+     *                      degrees clockwise
+     * @param leftDistance  the distance travelled by the simulated left side, in
+     *                      meters
+     * @param rightDistance the distance travelled by the simulated right side, in
+     *                      meters
+     */
+    public void simulateSensors(DoubleSupplier heading, DoubleSupplier leftDistance, DoubleSupplier rightDistance) {
+        this.simulatedHeading = heading;
+        this.simulatedLeftDistance = leftDistance;
+        this.simulatedRightDistance = rightDistance;
     }
 
     public void zeroHeading() {
         ahrs.zeroYaw();
+
+        // Headings from before zeroing are no longer comparable to new ones
+        this.headingHistory.clear();
     }
 }
@@ -8,16 +8,83 @@
 package frc.robot.subsystems;
 
 import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants.IntakeConstants;
+import frc.robot.common.Clock;
+import frc.robot.common.Coalescing;
 import frc.robot.common.Preferences;
+import frc.robot.common.Profiler;
+
+public class IntakeSubsystem extends Profiler.ProfiledSubsystem implements Preferences.Group {
+    /**
+     * JamDetector decides whether the intake is jammed, from how hard it is being
+     * driven, how much current it draws, and how fast it turns. A jammed intake
+     * draws a lot of current without turning, for longer than it takes to get a
+     * ball moving.
+     */
+    public static class JamDetector {
+        /* The time at which the intake stalled, or NaN if it isn't stalled. */
+        private double stalledSince = Double.NaN;
+
+        /**
+         * Updates the detector with the latest readings.
+         *
+         * @param timestamp the time of the readings, in seconds
+         * @param output    the output that the intake is driven at
+         * @param current   the intake's stator current, in amps
+         * @param velocity  the intake's speed, in encoder pulses per 100ms
+         * @return whether the intake is jammed
+         */
+        public boolean update(double timestamp, double output, double current, double velocity) {
+            boolean stalled = Math.abs(output) >= IntakeConstants.STALL_MINIMUM_OUTPUT
+                    && current >= IntakeConstants.STALL_CURRENT_AMPS
+                    && Math.abs(velocity) <= IntakeConstants.STALL_VELOCITY;
+
+            if (!stalled) {
+                this.stalledSince = Double.NaN;
+                return false;
+            } else if (Double.isNaN(this.stalledSince)) {
+                this.stalledSince = timestamp;
+            }
+
+            return timestamp - this.stalledSince >= IntakeConstants.STALL_SECONDS;
+        }
+
+        /**
+         * Forgets any stall in progress.
+         */
+        public void reset() {
+            this.stalledSince = Double.NaN;
+        }
+    }
 
-public class IntakeSubsystem extends SubsystemBase implements Preferences.Group {
     WPI_TalonSRX intakeTalon;
 
+    /* The speed that the intake has been asked to run at. */
+    private double requestedSpeed;
+
+    /* Watches the intake for jams while it runs forwards. */
+    private final JamDetector jamDetector = new JamDetector();
+
+    /* The time at which the intake stops reversing out a jam, or NaN if it isn't. */
+    private double unjamEndTime = Double.NaN;
+
+    /*
+     * The time of the first jam in the current window, the number of jams in the
+     * window, and the number of jams since the robot started.
+     */
+    private double jamWindowStartTime = Double.NEGATIVE_INFINITY;
+    private int jamsInWindow;
+    private int jams;
+
+    /* Whether the intake has given up on a jam until it is stopped, reversed or cleared. */
+    private boolean jamFaulted;
+
     private DoubleSolenoid intakeDelivery;
 
     boolean hasDeployed;
@@ -27,13 +94,16 @@ public class IntakeSubsystem extends SubsystemBase implements Preferences.Group
      */
 
     public IntakeSubsystem() {
-        intakeTalon = new WPI_TalonSRX(IntakeConstants.INTAKE_MOTOR);
+        intakeTalon = new Coalescing.CoalescingTalonSRX(IntakeConstants.INTAKE_MOTOR, Coalescing.counter("intake"));
 
         intakeDelivery = new DoubleSolenoid(IntakeConstants.INTAKE_SOLENOID_DEPLOY,
                 IntakeConstants.INTAKE_SOLENOID_RETRACT);
 
         intakeTalon.configFactoryDefault();
 
+        // Measure how fast the intake turns, to tell a jam from a ball being pulled in
+        intakeTalon.configSelectedFeedbackSensor(FeedbackDevice.QuadEncoder, 0, IntakeConstants.CONFIG_TIMEOUT_MS);
+
         hasDeployed = false;
     }
 
@@ -48,17 +118,131 @@ public class IntakeSubsystem extends SubsystemBase implements Preferences.Group
     }
 
     @Override
-    public void periodic() {
+    protected void profiledPeriodic() {
         // This method will be called once per scheduler run
+        this.applyOutput();
     }
 
     public void deliverIntake() {
-        this.runIntake(0.0);
+        this.stopIntake();
         this.intakeDelivery.set(Value.kForward);
     }
 
+    /**
+     * Asks the intake to run at the given speed, from the next periodic on.
+     * Running it backwards clears a jam that it has given up on, but only holding
+     * it at zero, as while the serializer is full, doesn't.
+     *
+     * @param speed the speed to run at, from -1 to 1
+     */
     public void runIntake(double speed) {
-        this.intakeTalon.set(ControlMode.PercentOutput, speed * IntakeConstants.MAXIMUM_INTAKE_SPEED);
+        if (speed < 0) {
+            this.clearJamFault();
+        }
+
+        this.requestedSpeed = speed;
+    }
+
+    /**
+     * Stops the intake, clearing a jam that it has given up on.
+     */
+    public void stopIntake() {
+        this.clearJamFault();
+        this.requestedSpeed = 0.0;
+    }
+
+    /**
+     * Lets the intake run again after giving up on a jam, such as when the driver
+     * asks for something else.
+     */
+    public void clearJamFault() {
+        this.jamFaulted = false;
+    }
+
+    /**
+     * Drives the intake at the requested speed, unless it is clearing a jam. While
+     * the intake runs forwards, it is watched for jams, and each one is reversed
+     * out for a moment before trying again.
+     */
+    private void applyOutput() {
+        double now = Clock.now();
+
+        // Stay stopped after giving up, until the fault is cleared
+        if (this.jamFaulted) {
+            this.intakeTalon.set(ControlMode.PercentOutput, 0.0);
+            return;
+        }
+
+        if (!Double.isNaN(this.unjamEndTime)) {
+            if (now < this.unjamEndTime) {
+                this.intakeTalon.set(ControlMode.PercentOutput,
+                        IntakeConstants.UNJAM_SPEED * IntakeConstants.MAXIMUM_INTAKE_SPEED);
+                return;
+            }
+
+            // Try again
+            this.unjamEndTime = Double.NaN;
+            this.jamDetector.reset();
+        }
+
+        double output = this.requestedSpeed * IntakeConstants.MAXIMUM_INTAKE_SPEED;
+        this.intakeTalon.set(ControlMode.PercentOutput, output);
+
+        if (this.requestedSpeed <= 0) {
+            this.jamDetector.reset();
+        } else if (this.jamDetector.update(now, output, this.intakeTalon.getStatorCurrent(),
+                this.intakeTalon.getSelectedSensorVelocity())) {
+            this.onJam(now);
+        }
+    }
+
+    /**
+     * Starts reversing out a jam, or gives up if the intake has jammed too many
+     * times in a row.
+     */
+    private void onJam(double now) {
+        if (now - this.jamWindowStartTime > IntakeConstants.UNJAM_WINDOW_SECONDS) {
+            this.jamWindowStartTime = now;
+            this.jamsInWindow = 0;
+        }
+
+        this.jamsInWindow++;
+        this.jams++;
+        SmartDashboard.putNumber("Intake/jams", this.jams);
+
+        if (this.jamsInWindow > IntakeConstants.MAXIMUM_UNJAM_ATTEMPTS) {
+            this.jamFaulted = true;
+            this.intakeTalon.set(ControlMode.PercentOutput, 0.0);
+
+            DriverStation.reportWarning(String.format("Intake jammed %d times in %.1f s; stopping until cleared",
+                    this.jamsInWindow, now - this.jamWindowStartTime), false);
+            return;
+        }
+
+        this.unjamEndTime = now + IntakeConstants.UNJAM_SECONDS;
+        this.intakeTalon.set(ControlMode.PercentOutput,
+                IntakeConstants.UNJAM_SPEED * IntakeConstants.MAXIMUM_INTAKE_SPEED);
+
+        DriverStation.reportWarning(String.format("Intake jammed at %.2f s (%.1f A); reversing, attempt %d", now,
+                this.intakeTalon.getStatorCurrent(), this.jamsInWindow), false);
+    }
+
+    /**
+     * Checks whether the intake is reversing out a jam, or has given up on one.
+     *
+     * @return whether the intake is jammed
+     */
+    public boolean isJammed() {
+        return this.jamFaulted || !Double.isNaN(this.unjamEndTime);
+    }
+
+    /**
+     * Gets the number of jams since the robot started.
+     *
+     * @return the number of jams
+     */
+    public int getJamCount() {
+        return this.jams;
     }
 
     public void retractIntake() {
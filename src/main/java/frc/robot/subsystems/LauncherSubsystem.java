@@ -7,15 +7,88 @@
 
 package frc.robot.subsystems;
 
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import java.io.File;
+import java.io.IOException;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
 import frc.robot.Constants;
 import frc.robot.Constants.LauncherConstants;
+import frc.robot.common.Coalescing;
+import frc.robot.common.Profiler;
+import frc.robot.common.Telemetry;
+import frc.robot.common.Tables;
 
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
 import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.TalonFXFeedbackDevice;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 
-public class LauncherSubsystem extends SubsystemBase {
+public class LauncherSubsystem extends Profiler.ProfiledSubsystem {
+  /**
+   * ShotDetector counts balls as they are launched. A ball is launched when it
+   * leaves the photoeye at the launcher, or when it pulls the flywheel's speed
+   * down after the flywheel was at speed, whichever is seen first.
+   */
+  public static class ShotDetector {
+    /* Whether the flywheel has been at speed since the last shot. */
+    private boolean armed;
+
+    /* The flywheel's setpoint that it was last armed at, in rpm. */
+    private double armedTarget;
+
+    /* Whether the photoeye at the launcher was blocked on the last update. */
+    private boolean ballWasAtLauncher;
+
+    /* The time of the last shot, in seconds. */
+    private double lastShotTime = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Forgets any previous shots, such as when a new volley starts.
+     */
+    public void reset() {
+      this.armed = false;
+      this.ballWasAtLauncher = false;
+      this.lastShotTime = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Updates the detector with the latest readings.
+     *
+     * @param timestamp      the time of the readings, in seconds
+     * @param velocity       the speed of the flywheel, in rpm
+     * @param target         the flywheel's setpoint, in rpm
+     * @param ballAtLauncher whether the photoeye at the launcher is blocked
+     * @return whether a ball was launched since the last update
+     */
+    public boolean update(double timestamp, double velocity, double target, boolean ballAtLauncher) {
+      // A new setpoint isn't a dip, so wait for the flywheel to reach it first
+      if (this.armed && Math.abs(target - this.armedTarget) > LauncherConstants.FLYWHEEL_TOLERANCE_RPM) {
+        this.armed = false;
+      }
+
+      boolean released = this.ballWasAtLauncher && !ballAtLauncher;
+      boolean dipped = this.armed && velocity < target - LauncherConstants.SHOT_DIP_RPM;
+
+      this.ballWasAtLauncher = ballAtLauncher;
+
+      if (Math.abs(velocity - target) <= LauncherConstants.FLYWHEEL_TOLERANCE_RPM) {
+        this.armed = true;
+        this.armedTarget = target;
+      }
+
+      if ((released || dipped) && timestamp - this.lastShotTime > LauncherConstants.SHOT_DEDUPE_SECONDS) {
+        this.armed = false;
+        this.lastShotTime = timestamp;
+
+        return true;
+      }
+
+      return false;
+    }
+  }
+
 
   /**
    * Creates a new Launcher.
@@ -25,14 +98,98 @@ public class LauncherSubsystem extends SubsystemBase {
   public WPI_TalonFX launcherMotor2;
   WPI_TalonSRX feedMotor;
 
-  public LauncherSubsystem() {
-    launcherMotor = new WPI_TalonFX(LauncherConstants.LAUNCHER_MOTOR_1);
-    launcherMotor2 = new WPI_TalonFX(LauncherConstants.LAUNCHER_MOTOR_2);
-    feedMotor = new WPI_TalonSRX(Constants.ROLLER_MOTOR);
+  /* The speed that the flywheel is being driven to, in rpm. 0 when stopped. */
+  private double targetRpm;
+
+  /* The flywheel's speed and the speed it's driven to, logged on every loop. */
+  private final Telemetry.Signal velocitySignal = Telemetry.signal("launcher/velocity");
+  private final Telemetry.Signal targetSignal = Telemetry.signal("launcher/target");
+
+  /* Estimates the distance to the target that the launcher is aiming for. */
+  private final VisionSubsystem vision;
+
+  /* The flywheel's speed for each distance to the target. */
+  private final Tables.Interpolating shotMap;
+
+  /* The column of the shot map holding the flywheel's speed. */
+  private final int rpmColumn;
+
+  /*
+   * The speed that the flywheel should launch at from the last distance to the
+   * target that was seen, in rpm.
+   */
+  private double shotRpm = LauncherConstants.FLYWHEEL_RPM;
+
+  public LauncherSubsystem(VisionSubsystem vision) {
+    this.vision = vision;
+    this.shotMap = loadShotMap();
+    this.rpmColumn = this.shotMap.column(LauncherConstants.SHOT_MAP_RPM_COLUMN);
+
+    // The launcher is started every frame, so skip re-sending what hasn't changed
+    Coalescing.Counter counter = Coalescing.counter("launcher");
+    launcherMotor = new Coalescing.CoalescingTalonFX(LauncherConstants.LAUNCHER_MOTOR_1, counter);
+    launcherMotor2 = new Coalescing.CoalescingTalonFX(LauncherConstants.LAUNCHER_MOTOR_2, counter);
+    feedMotor = new Coalescing.CoalescingTalonSRX(Constants.ROLLER_MOTOR, counter);
 
     launcherMotor.configFactoryDefault();
     launcherMotor2.configFactoryDefault();
     feedMotor.configFactoryDefault();
+
+    // Close the flywheel's velocity loop on the leading talon's integrated encoder
+    launcherMotor.configSelectedFeedbackSensor(TalonFXFeedbackDevice.IntegratedSensor, 0,
+        LauncherConstants.CONFIG_TIMEOUT_MS);
+    launcherMotor.config_kP(LauncherConstants.FLYWHEEL_SLOT, LauncherConstants.FLYWHEEL_P,
+        LauncherConstants.CONFIG_TIMEOUT_MS);
+    launcherMotor.config_kI(LauncherConstants.FLYWHEEL_SLOT, LauncherConstants.FLYWHEEL_I,
+        LauncherConstants.CONFIG_TIMEOUT_MS);
+    launcherMotor.config_kD(LauncherConstants.FLYWHEEL_SLOT, LauncherConstants.FLYWHEEL_D,
+        LauncherConstants.CONFIG_TIMEOUT_MS);
+    launcherMotor.config_kF(LauncherConstants.FLYWHEEL_SLOT, LauncherConstants.FLYWHEEL_F,
+        LauncherConstants.CONFIG_TIMEOUT_MS);
+    launcherMotor.selectProfileSlot(LauncherConstants.FLYWHEEL_SLOT, 0);
+
+    launcherMotor.setInverted(true);
+    launcherMotor2.follow(launcherMotor);
+  }
+
+  /**
+   * Loads the shot map from the deploy directory. If it can't be loaded, the
+   * flywheel is always run at its default speed.
+   *
+   * @return the flywheel's speed for each distance to the target
+   */
+  private static Tables.Interpolating loadShotMap() {
+    File file = new File(Filesystem.getDeployDirectory(), LauncherConstants.SHOT_MAP_FILE);
+
+    try {
+      Tables.Interpolating map = Tables.Interpolating.read(file);
+      if (map.column(LauncherConstants.SHOT_MAP_RPM_COLUMN) >= 0) {
+        return map;
+      }
+
+      DriverStation.reportWarning(file + " has no " + LauncherConstants.SHOT_MAP_RPM_COLUMN + " column", false);
+    } catch (IOException e) {
+      DriverStation.reportWarning("Unable to load the shot map: " + e.getMessage(), false);
+    }
+
+    return new Tables.Interpolating(new String[] { LauncherConstants.SHOT_MAP_RPM_COLUMN }, new double[] { 0.0 },
+        new double[][] { { LauncherConstants.FLYWHEEL_RPM } });
+  }
+
+  @Override
+  protected void profiledPeriodic() {
+    // Follow the distance to the target, so that the flywheel is already at the
+    // right speed once the robot has lined up
+    if (this.vision.hasTarget()) {
+      this.shotRpm = this.shotMap.get(this.rpmColumn, this.vision.getDistanceMeters());
+    }
+
+    if (this.targetRpm != 0.0) {
+      this.setVelocity(this.shotRpm);
+    }
+
+    this.velocitySignal.log(this.getVelocity());
+    this.targetSignal.log(this.targetRpm);
   }
 
   public void startRollers() {
@@ -43,14 +200,77 @@ public class LauncherSubsystem extends SubsystemBase {
     feedMotor.set(ControlMode.PercentOutput, 0);
   }
 
+  /**
+   * Spins the flywheel up to the speed needed from the last distance to the
+   * target that was seen. The speed keeps following the distance for as long as
+   * the flywheel is running.
+   */
   public void startLauncher() {
-    launcherMotor.set(ControlMode.PercentOutput, 1);
+    this.setVelocity(this.shotRpm);
+  }
+
+  /**
+   * Gets the speed that the flywheel should launch at from the last distance to
+   * the target that was seen.
+   *
+   * @return the launching speed, in rpm
+   */
+  public double getShotVelocity() {
+    return this.shotRpm;
+  }
+
+  /**
+   * Drives the flywheel at the given speed using the talon's velocity loop, with
+   * a constant feedforward to overcome friction.
+   *
+   * @param rpm the speed of the flywheel, in motor rpm
+   */
+  public void setVelocity(double rpm) {
+    this.targetRpm = rpm;
+
+    launcherMotor.set(ControlMode.Velocity, rpm * LauncherConstants.ENCODER_TICKS_PER_REVOLUTION / 600.0,
+        DemandType.ArbitraryFeedForward, Math.signum(rpm) * LauncherConstants.FLYWHEEL_KS);
     launcherMotor.setInverted(true);
     launcherMotor2.follow(launcherMotor);
   }
 
+  /**
+   * Lets the flywheel coast to a stop, rather than braking it against its
+   * momentum.
+   */
   public void stopLauncher() {
-    launcherMotor.set(ControlMode.Velocity, 0);
-    launcherMotor2.set(ControlMode.Velocity, 0);
+    this.targetRpm = 0.0;
+
+    launcherMotor.set(ControlMode.PercentOutput, 0);
+    launcherMotor2.follow(launcherMotor);
+  }
+
+  /**
+   * Gets the speed of the flywheel, as measured by the leading talon.
+   *
+   * @return the speed of the flywheel, in motor rpm
+   */
+  public double getVelocity() {
+    return launcherMotor.getSelectedSensorVelocity() * 600.0 / LauncherConstants.ENCODER_TICKS_PER_REVOLUTION;
+  }
+
+  /**
+   * Gets the speed that the flywheel is being driven to.
+   *
+   * @return the flywheel's setpoint, in rpm, or 0 if it is stopped
+   */
+  public double getTargetVelocity() {
+    return this.targetRpm;
+  }
+
+  /**
+   * Checks whether the flywheel is running, and within the given tolerance of its
+   * setpoint.
+   *
+   * @param tolerance the largest allowed error, in rpm
+   * @return whether the flywheel is at speed
+   */
+  public boolean isAtSpeed(double tolerance) {
+    return this.targetRpm != 0.0 && Math.abs(this.getVelocity() - this.targetRpm) <= tolerance;
   }
-}
\ No newline at end of file
+}
@@ -7,10 +7,10 @@
 
 package frc.robot.subsystems;
 
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.common.Preferences;
+import frc.robot.common.Profiler;
 
-public class LiftSubsystem extends SubsystemBase implements Preferences.Group {
+public class LiftSubsystem extends Profiler.ProfiledSubsystem implements Preferences.Group {
 
     /**
      * Creates a new instance of the Lift subsystem.
@@ -29,6 +29,6 @@ public class LiftSubsystem extends SubsystemBase implements Preferences.Group {
     }
 
     @Override
-    public void periodic() {
+    protected void profiledPeriodic() {
     }
 }
@@ -7,16 +7,71 @@
 
 package frc.robot.subsystems;
 
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.geometry.Pose2d;
+import edu.wpi.first.wpilibj.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.kinematics.DifferentialDriveOdometry;
+import frc.robot.Constants.NavigationConstants;
+import frc.robot.common.Clock;
 import frc.robot.common.Preferences;
+import frc.robot.common.Profiler;
+import frc.robot.common.TimeSeries;
 
-public class NavigationSubsystem extends SubsystemBase implements Preferences.Group {
+/**
+ * NavigationSubsystem keeps track of where the robot is on the field, by
+ * combining the distance travelled by each side of the drivetrain with the
+ * navx's heading. The pose is updated on its own notifier, faster than the
+ * scheduler runs, and recent poses are kept so that older sensor readings can
+ * be related to where the robot was when they were taken.
+ */
+public class NavigationSubsystem extends Profiler.ProfiledSubsystem implements Preferences.Group {
+    /* The drivetrain whose encoders and navx are used to track the robot. */
+    private final DriveSubsystem drivetrain;
+
+    /* Integrates the encoder distances and headings into a pose. */
+    private final DifferentialDriveOdometry odometry;
+
+    /* Runs each odometry update. */
+    private final Notifier notifier;
+
+    /*
+     * Recent poses of the robot. The angle is kept continuous, in radians
+     * counter-clockwise, so that it can be interpolated across a wrap-around.
+     */
+    private final TimeSeries xHistory, yHistory, angleHistory;
+
+    /* Guards the odometry and the pose history, which are shared with the notifier. */
+    private final Object lock = new Object();
+
+    /*
+     * The distance each side of the drivetrain had travelled when the pose was
+     * last reset, which the odometry measures from.
+     */
+    private double leftOffset, rightOffset;
+
+    /* The most recently calculated pose of the robot. */
+    private volatile Pose2d pose;
 
     /**
-     * Creates a new ExampleSubsystem.
+     * Initializes a new NavigationSubsystem, and starts updating the robot's pose
+     * from the given drivetrain's sensors.
+     *
+     * @param drivetrain the drivetrain whose sensors should be used
      */
+    public NavigationSubsystem(DriveSubsystem drivetrain) {
+        this.drivetrain = drivetrain;
+        this.pose = new Pose2d();
+        this.leftOffset = drivetrain.getLeftDistance();
+        this.rightOffset = drivetrain.getRightDistance();
+        this.odometry = new DifferentialDriveOdometry(this.getGyroAngle(), this.pose);
+
+        this.xHistory = new TimeSeries(NavigationConstants.POSE_HISTORY_SIZE);
+        this.yHistory = new TimeSeries(NavigationConstants.POSE_HISTORY_SIZE);
+        this.angleHistory = new TimeSeries(NavigationConstants.POSE_HISTORY_SIZE);
 
-    public NavigationSubsystem() {
+        this.notifier = new Notifier(this::updateOdometry);
+        this.notifier.setName("Odometry");
+        this.notifier.startPeriodic(NavigationConstants.ODOMETRY_PERIOD_SECONDS);
     }
 
     /**
@@ -29,9 +84,89 @@ public class NavigationSubsystem extends SubsystemBase implements Preferences.Gr
         return "navigation";
     }
 
-    @Override
-    public void periodic() {
-        // This method will be called once per scheduler run
+    /**
+     * Reads the drivetrain's sensors and moves the pose along by however far the
+     * robot has travelled since the last update. Called from the notifier thread.
+     */
+    private void updateOdometry() {
+        double timestamp = Clock.now();
+        double continuousHeading = this.drivetrain.getContinuousHeading();
+        double leftDistance = this.drivetrain.getLeftDistance();
+        double rightDistance = this.drivetrain.getRightDistance();
+
+        synchronized (this.lock) {
+            Pose2d updated = this.odometry.update(Rotation2d.fromDegrees(-continuousHeading),
+                    leftDistance - this.leftOffset, rightDistance - this.rightOffset);
+
+            // Keep the continuous angle, rather than the wrapped angle in the pose
+            double angle = this.angleHistory.size() == 0 ? updated.getRotation().getRadians()
+                    : this.angleHistory.getLatest()
+                            + Math.IEEEremainder(updated.getRotation().getRadians() - this.angleHistory.getLatest(),
+                                    2 * Math.PI);
+
+            this.xHistory.add(timestamp, updated.getTranslation().getX());
+            this.yHistory.add(timestamp, updated.getTranslation().getY());
+            this.angleHistory.add(timestamp, angle);
+
+            this.pose = updated;
+        }
+    }
+
+    /**
+     * Gets the heading of the robot in the counter-clockwise convention used by
+     * the odometry.
+     */
+    private Rotation2d getGyroAngle() {
+        return Rotation2d.fromDegrees(-this.drivetrain.getContinuousHeading());
+    }
+
+    /**
+     * Gets the most recent estimate of the robot's pose on the field.
+     *
+     * @return the pose of the robot, in meters
+     */
+    public Pose2d getPose() {
+        return this.pose;
+    }
+
+    /**
+     * Gets the pose of the robot at some recent point in time, interpolating
+     * between the two updates surrounding it.
+     *
+     * @param timestamp the time, in seconds, at which the pose should be looked up
+     * @return the pose of the robot at the given time
+     */
+    public Pose2d getPoseAt(double timestamp) {
+        synchronized (this.lock) {
+            // Without any history, the current pose is the best guess we have
+            if (this.angleHistory.size() == 0) {
+                return this.pose;
+            }
+
+            return new Pose2d(this.xHistory.get(timestamp), this.yHistory.get(timestamp),
+                    new Rotation2d(this.angleHistory.get(timestamp)));
+        }
+    }
+
+    /**
+     * Moves the estimate of the robot's pose to the given pose, such as the
+     * starting point of an autonomous path. Clears the pose history.
+     *
+     * @param pose the new pose of the robot
+     */
+    public void resetPose(Pose2d pose) {
+        synchronized (this.lock) {
+            this.odometry.resetPosition(pose, this.getGyroAngle());
+
+            // The odometry expects the encoders to start again from zero
+            this.leftOffset = this.drivetrain.getLeftDistance();
+            this.rightOffset = this.drivetrain.getRightDistance();
+
+            this.xHistory.clear();
+            this.yHistory.clear();
+            this.angleHistory.clear();
 
+            this.pose = pose;
+        }
     }
 }
@@ -8,18 +8,254 @@
 package frc.robot.subsystems;
 
 import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
 
 import edu.wpi.first.wpilibj.AnalogInput;
-import edu.wpi.first.wpilibj.Timer;
 //import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 //import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
 import frc.robot.Constants.SerializerConstants;
+import frc.robot.common.Clock;
+import frc.robot.common.Coalescing;
+import frc.robot.common.ControlLoop;
+import frc.robot.common.Edges;
+import frc.robot.common.Profiler;
+import frc.robot.common.Telemetry;
+import frc.robot.common.TimeSeries;
+
+public class SerializerSubsystem extends Profiler.ProfiledSubsystem {
+  /**
+   * BallTracker keeps track of where each ball in the serializer is along the
+   * belt. The position of each ball is measured in how far the belt has
+   * travelled since the ball reached the photoeye at the entrance, so the balls
+   * move along with the belt's encoder, and are corrected as they pass the
+   * photoeyes. Edges from every photoeye are handled in the order that they
+   * happened, at the belt's travel at the time of each edge.
+   */
+  public static class BallTracker {
+    /* The edges of the photoeyes at the entrance, middle and launcher. */
+    private final Edges.Queue entrance, middle, launcher;
+
+    /* The belt's travel over the last few loops, in inches. */
+    private final TimeSeries travel;
+
+    /*
+     * The belt's travel at which each ball reached the entrance, from the ball
+     * nearest the launcher back, in a ring starting at first.
+     */
+    private final double[] entries;
+    private int first, count;
+
+    /**
+     * Initializes a new BallTracker, with any balls already in the serializer
+     * lined up behind the launcher.
+     *
+     * @param entrance the edges of the photoeye at the entrance
+     * @param middle   the edges of the photoeye in the middle
+     * @param launcher the edges of the photoeye at the launcher
+     * @param count    the number of balls already in the serializer
+     * @param travel   the belt's current travel, in inches
+     */
+    public BallTracker(Edges.Queue entrance, Edges.Queue middle, Edges.Queue launcher, int count, double travel) {
+      this.entrance = entrance;
+      this.middle = middle;
+      this.launcher = launcher;
+      this.travel = new TimeSeries(SerializerConstants.BELT_HISTORY_SIZE);
+      this.entries = new double[SerializerConstants.MAX_BALLS];
+
+      for (int i = 0; i < Math.min(count, this.entries.length); i++) {
+        this.add(travel - (SerializerConstants.READY_POSITION - i * SerializerConstants.BALL_PITCH));
+      }
+    }
+
+    /**
+     * Moves the balls along with the belt, and handles the balls that have
+     * entered, passed the middle or left since the last update.
+     *
+     * @param timestamp the time of the update, in seconds
+     * @param travel    the belt's travel, in inches
+     * @param reversing whether the belts are running the balls back out of the
+     *                  entrance
+     */
+    public void update(double timestamp, double travel, boolean reversing) {
+      this.travel.add(timestamp, travel);
+
+      Edges.Queue next;
+      while ((next = this.oldest()) != null) {
+        // The photoeyes read high while clear, so a falling edge is the front of a ball
+        // reaching one, and a rising edge is its back leaving
+        boolean cleared = next.peekRising();
+        double at = this.travel.get(next.peekTimestamp());
+        next.remove();
+
+        if (next == this.entrance) {
+          if (!cleared && !reversing && this.count < this.entries.length) {
+            this.add(at);
+          } else if (cleared && reversing && this.count > 0) {
+            this.count--;
+          }
+        } else if (next == this.middle) {
+          if (!cleared && !reversing && this.count > 0) {
+            this.correct(at, SerializerConstants.MIDDLE_SENSOR_POSITION);
+          }
+        } else if (cleared && !reversing && this.count > 0) {
+          // The first ball has left for the launcher
+          this.first = (this.first + 1) % this.entries.length;
+          this.count--;
+        }
+      }
+    }
+
+    /**
+     * Adds a ball behind the others, which reached the entrance at the given
+     * travel.
+     */
+    private void add(double entry) {
+      this.entries[(this.first + this.count) % this.entries.length] = entry;
+      this.count++;
+    }
+
+    /**
+     * Moves the ball that should be nearest to a photoeye onto it, taking up any
+     * slip between the belt and the balls.
+     */
+    private void correct(double at, double position) {
+      int nearest = 0;
+      for (int i = 1; i < this.count; i++) {
+        if (Math.abs(this.positionAt(i, at) - position) < Math.abs(this.positionAt(nearest, at) - position)) {
+          nearest = i;
+        }
+      }
+
+      this.entries[(this.first + nearest) % this.entries.length] = at - position;
+    }
+
+    /**
+     * Gets where a ball was when the belt had travelled the given distance.
+     */
+    private double positionAt(int index, double travel) {
+      return travel - this.entries[(this.first + index) % this.entries.length];
+    }
+
+    /**
+     * Gets where a ball is along the belt.
+     *
+     * @param index the index of the ball, counting back from the launcher
+     * @return the distance from the photoeye at the entrance to the front of the
+     *         ball, in inches
+     */
+    public double getPosition(int index) {
+      return this.positionAt(index, this.travel.getLatest());
+    }
+
+    /**
+     * Gets how much further the belt should move to index the balls. The belt
+     * moves until the last ball is a full pitch past the entrance, so that the
+     * next can come in without touching it, but never so far that the first
+     * ball passes the point where it waits to be launched.
+     *
+     * @return the distance that the belt should move, in inches
+     */
+    public double getAdvance() {
+      if (this.count == 0) {
+        return 0.0;
+      }
+
+      double room = SerializerConstants.READY_POSITION - this.getPosition(0);
+      double needed = SerializerConstants.BALL_PITCH - this.getPosition(this.count - 1);
+
+      return Math.max(0.0, Math.min(needed, room));
+    }
+
+    /**
+     * Gets the number of balls in the serializer.
+     *
+     * @return the number of balls
+     */
+    public int getCount() {
+      return this.count;
+    }
+
+    /**
+     * Finds the queue holding the oldest edge that hasn't been handled yet.
+     *
+     * @return the queue with the oldest edge, or null if every queue is empty
+     */
+    private Edges.Queue oldest() {
+      Edges.Queue oldest = null;
+
+      if (!this.entrance.isEmpty()) {
+        oldest = this.entrance;
+      }
+      if (!this.middle.isEmpty() && (oldest == null || this.middle.peekTimestamp() < oldest.peekTimestamp())) {
+        oldest = this.middle;
+      }
+      if (!this.launcher.isEmpty() && (oldest == null || this.launcher.peekTimestamp() < oldest.peekTimestamp())) {
+        oldest = this.launcher;
+      }
+
+      return oldest;
+    }
+  }
+
+  /**
+   * FeedGate feeds balls into the launcher from the control loop, and stops the
+   * belt as soon as a ball has passed the photoeye at the launcher, rather than
+   * up to a robot loop later, so that the next ball is held back while the
+   * flywheel recovers. It only drives the belt while armed.
+   */
+  static class FeedGate implements ControlLoop.Controller {
+    /* The belt, and the photoeye at the launcher. */
+    private final WPI_TalonSRX belt;
+    private final Edges.AnalogSensor eye;
+
+    /* The number of the current feed, or 0 when disarmed. Written by the serializer. */
+    final ControlLoop.Mailbox setpoint = new ControlLoop.Mailbox(1);
+
+    /* The number of the feed as of the last run. */
+    private double lastFeed;
+
+    /* Whether a ball has reached the photoeye during this feed, and has left it. */
+    private boolean blocked, closed;
+
+    FeedGate(WPI_TalonSRX belt, Edges.AnalogSensor eye) {
+      this.belt = belt;
+      this.eye = eye;
+    }
+
+    @Override
+    public void update(double timestamp) {
+      double feed = this.setpoint.take()[0];
+      if (feed != this.lastFeed) {
+        this.lastFeed = feed;
+        this.blocked = false;
+        this.closed = false;
+      }
+
+      if (feed == 0.0) {
+        return;
+      }
+
+      // The photoeye is high while nothing is in front of it
+      if (!this.eye.get()) {
+        this.blocked = true;
+      } else if (this.blocked) {
+        this.closed = true;
+      }
+
+      synchronized (this.belt) {
+        // The serializer may have taken the belt back since the setpoint was read
+        if (this.setpoint.hasNew()) {
+          return;
+        }
+
+        this.belt.set(ControlMode.PercentOutput, this.closed ? 0 : -SerializerConstants.SERIALIZER_SPEED);
+      }
+    }
+  }
 
-public class SerializerSubsystem extends SubsystemBase {
   /**
    * Creates a new Serializer.
    */
@@ -32,13 +268,42 @@ public class SerializerSubsystem extends SubsystemBase {
   public AnalogInput serializerSensor2;
   public AnalogInput launcherSensor;
 
+  // Watches each sensor for balls coming and going between loops
+  private final Edges.AnalogSensor serializerEye1, serializerEye2, launcherEye;
+
+  /* Counts the balls in the serializer from the edges of the photoeyes. */
+  private final BallTracker tracker;
+
+  /* Stops the belt from the control loop once each ball has been fed. */
+  private final FeedGate feedGate;
+
+  /* A reusable buffer for the gate's setpoint, and the number of the last feed. */
+  private final double[] feedSetpoint = new double[1];
+  private int feedCount;
+
+  /* Whether the gate has the belt. */
+  private boolean feeding;
+
+  // Logs each sensor's voltage, the belt's travel and the ball count on every loop
+  private final Telemetry.Signal sensor1Signal = Telemetry.signal("serializer/sensor1");
+  private final Telemetry.Signal sensor2Signal = Telemetry.signal("serializer/sensor2");
+  private final Telemetry.Signal launcherSensorSignal = Telemetry.signal("serializer/launcherSensor");
+  private final Telemetry.Signal travelSignal = Telemetry.signal("serializer/travel");
+  private final Telemetry.Signal ballsSignal = Telemetry.signal("serializer/balls");
+
   // Initializes variables that wiil be used in the program
-  public double ballCount = 3.0;
+  public double ballCount = SerializerConstants.INITIAL_BALLS;
   public boolean acceptingBalls = true;
   public boolean previousLSValue = false; // previous launcher sensor value
   public boolean previousSSValue = false; // previous serializer sensor value
   public double previousBallCount;
 
+  /*
+   * The time at which the belts stop moving the balls forward, or NaN if they
+   * aren't. Checked on each call to periodic, rather than waited for.
+   */
+  private double advanceEndTime = Double.NaN;
+
   public SerializerSubsystem() {
     // instantiates sensor values with respect to the contants method
     serializerSensor1 = new AnalogInput(Constants.PHOTOELECTRIC_SENSOR_1);
@@ -47,15 +312,83 @@ public class SerializerSubsystem extends SubsystemBase {
     SmartDashboard.putNumber("Ball Count: ", ballCount);
 
     
-    this.serializerMotor1 = new WPI_TalonSRX(SerializerConstants.SERIALIZER_MOTOR);
+    // The belt is set every frame, so skip re-sending the same output
+    this.serializerMotor1 = new Coalescing.CoalescingTalonSRX(SerializerConstants.SERIALIZER_MOTOR,
+        Coalescing.counter("serializer"));
     serializerMotor1.configFactoryDefault();
+
+    // Move the belt by distance with a position loop on its encoder
+    serializerMotor1.configSelectedFeedbackSensor(FeedbackDevice.QuadEncoder, 0,
+        SerializerConstants.CONFIG_TIMEOUT_MS);
+    serializerMotor1.config_kP(SerializerConstants.BELT_SLOT, SerializerConstants.BELT_P,
+        SerializerConstants.CONFIG_TIMEOUT_MS);
+    serializerMotor1.configClosedLoopPeakOutput(SerializerConstants.BELT_SLOT, SerializerConstants.BELT_PEAK_OUTPUT,
+        SerializerConstants.CONFIG_TIMEOUT_MS);
+    serializerMotor1.selectProfileSlot(SerializerConstants.BELT_SLOT, 0);
+
+    serializerEye1 = createEye(serializerSensor1);
+    serializerEye2 = createEye(serializerSensor2);
+    launcherEye = createEye(launcherSensor);
+
+    // The second sensor is at the start of the serializer
+    tracker = new BallTracker(serializerEye2.edges(), serializerEye1.edges(), launcherEye.edges(),
+        SerializerConstants.INITIAL_BALLS, getBeltTravel());
+
+    // There is only ever one serializer, so its gate stays on the control loop
+    feedGate = new FeedGate(serializerMotor1, launcherEye);
+    ControlLoop.register(feedGate);
     
     // serializerMotor = new WPI_TalonFX(Constants.SERIALIZER_MOTOR);
   }
 
+  /**
+   * Watches a photoeye for edges, with hysteresis around the blocked voltage.
+   */
+  private static Edges.AnalogSensor createEye(AnalogInput sensor) {
+    return new Edges.AnalogSensor(sensor,
+        SerializerConstants.SENSOR_BLOCKED_VOLTAGE - SerializerConstants.SENSOR_HYSTERESIS_VOLTAGE,
+        SerializerConstants.SENSOR_BLOCKED_VOLTAGE + SerializerConstants.SENSOR_HYSTERESIS_VOLTAGE,
+        SerializerConstants.SENSOR_EDGE_CAPACITY);
+  }
   
+  /**
+   * Gets how far the belt has moved the balls forward. The belt runs forward at
+   * negative outputs, so the encoder counts down as it does.
+   *
+   * @return the belt's travel, in inches
+   */
+  public double getBeltTravel() {
+    return -serializerMotor1.getSelectedSensorPosition() / SerializerConstants.BELT_TICKS_PER_INCH;
+  }
+
+  /**
+   * Gets the model of where each ball is in the serializer.
+   *
+   * @return the ball tracker
+   */
+  public BallTracker getTracker() {
+    return tracker;
+  }
+
   // Called every time the Command Scheduler runs (every 20 miliseconds)
-  public void periodic() {
+  @Override
+  protected void profiledPeriodic() {
+    // Follow every ball that passed a sensor since the last loop, however quickly
+    double now = Clock.now();
+    double travel = getBeltTravel();
+    tracker.update(now, travel, serializerMotor1.getMotorOutputPercent() > 0);
+    if (tracker.getCount() != ballCount) {
+      ballCount = tracker.getCount();
+      SmartDashboard.putNumber("Ball Count: ", ballCount);
+    }
+
+    sensor1Signal.log(now, serializerSensor1.getVoltage());
+    sensor2Signal.log(now, serializerSensor2.getVoltage());
+    launcherSensorSignal.log(now, launcherSensor.getVoltage());
+    travelSignal.log(now, travel);
+    ballsSignal.log(now, tracker.getCount());
+
+
     // Recieves possible user input from the smart dashboard
     //ballCount = SmartDashboard.getNumber("Ball Count", ballCount);
     // outputs current value to the smart dashboard
@@ -63,34 +396,71 @@ public class SerializerSubsystem extends SubsystemBase {
     // Puts sensor voltage values on the Smart dashboard
     //SmartDashboard.putNumber("Sensor 1: ", serializerSensor1.getVoltage()); // true
     //SmartDashboard.putNumber("Sensor 2: ", serializerSensor2.getVoltage()); // true
-    serializerMotor1.set(ControlMode.PercentOutput, ((serializerSensor1.getVoltage() < .85 || serializerSensor2.getVoltage() < .85) && launcherSensor.getVoltage() > .85 ) ? -SerializerConstants.SERIALIZER_SPEED : 0);
+  }
+
+  /**
+   * Drives the belt to index the balls. Called on each loop by whatever owns the
+   * belt, when it isn't feeding the launcher or reversing.
+   */
+  public void index() {
+    // Keep the belts moving forward until their time is up
+    if (this.isMovingBeltsForward()) {
+      if (Clock.now() < this.advanceEndTime) {
+        setBelt(ControlMode.PercentOutput, -SerializerConstants.BELT_ADVANCE_SPEED);
+        return;
+      }
+
+      this.advanceEndTime = Double.NaN;
+    }
+
+    // Move the balls just far enough to make room for the next, without pushing
+    // the first into the launcher
+    double advance = launcherEye.get() ? tracker.getAdvance() : 0.0;
+    if (advance > SerializerConstants.BELT_TOLERANCE) {
+      setBelt(ControlMode.Position,
+          -(getBeltTravel() + advance) * SerializerConstants.BELT_TICKS_PER_INCH);
+    } else {
+      setBelt(ControlMode.PercentOutput, 0);
+    }
   }
   
+  /**
+   * Starts moving the balls forward for a fixed time. Returns straight away; the
+   * belts are stopped by periodic once the time is up. Does nothing if the belts
+   * are already moving forward.
+   */
   public void moveBeltsForward() {
+    if (this.isMovingBeltsForward()) {
+      return;
+    }
+
     // accepting balls is set to false to stop incorrect ball placement in the
     // serializer
     acceptingBalls = false;
     // turns serializer motor on
-    serializerMotor1.set(ControlMode.PercentOutput, -0.5);
-    // lets us know if the belts are running
-    //SmartDashboard.putBoolean("Belts On: ", true);
-    // changes the amount of time moved forward based on the ball count
-    Timer.delay(0.5); //check
-    // turns serializer motor on
-    serializerMotor1.set(ControlMode.PercentOutput, 0);
-    // outputs belt state to the smart dashboard
-    //SmartDashboard.putBoolean("Belts On: ", false);
+    setBelt(ControlMode.PercentOutput, -SerializerConstants.BELT_ADVANCE_SPEED);
+    this.advanceEndTime = Clock.now() + SerializerConstants.BELT_ADVANCE_SECONDS;
+  }
+
+  /**
+   * Checks whether the belts are still moving the balls forward after a call to
+   * moveBeltsForward.
+   *
+   * @return whether the belts are moving forward
+   */
+  public boolean isMovingBeltsForward() {
+    return !Double.isNaN(this.advanceEndTime);
   }
 
   public void moveBack() {
     // runs belts until sensor at the start of the serializer is triggered
-    if (serializerSensor2.getVoltage() < .85) {
+    if (!serializerEye2.get()) {
       // starts belts in inverse
-      serializerMotor1.set(ControlMode.PercentOutput, -SerializerConstants.SERIALIZER_SPEED);
+      setBelt(ControlMode.PercentOutput, -SerializerConstants.SERIALIZER_SPEED);
       //SmartDashboard.putBoolean("Belts On: ", true);
     } else {
      // stops belts
-    serializerMotor1.set(ControlMode.PercentOutput, 0);
+    setBelt(ControlMode.PercentOutput, 0);
     // outputs belt states to the smart dashboard
     //SmartDashboard.putBoolean("Belts On: ", false);
     // allows balls to be intaken again
@@ -98,8 +468,78 @@ public class SerializerSubsystem extends SubsystemBase {
     }
   }
   
+  /**
+   * Feeds the next ball into the launcher. The belt stops once the ball has
+   * passed the photoeye at the launcher, and only feeds again after the belt has
+   * been driven some other way. Called on each loop by whatever owns the belt.
+   */
+  public void feed() {
+    if (!feeding) {
+      feeding = true;
+      feedCount++;
+      feedSetpoint[0] = feedCount;
+      feedGate.setpoint.post(feedSetpoint);
+    }
+
+    // Without the control loop, gate the belt from here instead
+    if (!ControlLoop.isRunning()) {
+      feedGate.update(Clock.now());
+    }
+  }
+
+  /**
+   * Drives the belt from the robot loop, taking it back from the feed gate if the
+   * gate has it.
+   */
+  private void setBelt(ControlMode mode, double value) {
+    if (feeding) {
+      feeding = false;
+      feedSetpoint[0] = 0;
+      feedGate.setpoint.post(feedSetpoint);
+    }
+
+    synchronized (serializerMotor1) {
+      serializerMotor1.set(mode, value);
+    }
+  }
+
   public void runSerializer(){
-    serializerMotor1.set(ControlMode.PercentOutput, -Constants.SerializerConstants.SERIALIZER_SPEED);
+    setBelt(ControlMode.PercentOutput, -Constants.SerializerConstants.SERIALIZER_SPEED);
+  }
+
+  public void stopSerializer() {
+    setBelt(ControlMode.PercentOutput, 0);
+  }
+
+  /**
+   * Runs the belt backwards, carrying the balls back out of the entrance.
+   */
+  public void reverseSerializer() {
+    setBelt(ControlMode.PercentOutput, SerializerConstants.SERIALIZER_SPEED);
+  }
+
+  /**
+   * Checks whether there is room for another ball to come in. There isn't if the
+   * serializer is full, or if a ball is waiting at the entrance and the belt
+   * can't move to make room for it.
+   *
+   * @return whether the intake may feed another ball in
+   */
+  public boolean canAcceptBall() {
+    if (tracker.getCount() >= SerializerConstants.MAX_BALLS) {
+      return false;
+    }
+
+    return serializerEye2.get() || tracker.getAdvance() > SerializerConstants.BELT_TOLERANCE;
+  }
+
+  /**
+   * Checks whether a ball is in front of the photoeye at the launcher.
+   *
+   * @return whether the launcher sensor is blocked
+   */
+  public boolean isBallAtLauncher() {
+    return !launcherEye.get();
   }
 
 }
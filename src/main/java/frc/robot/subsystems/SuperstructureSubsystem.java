@@ -0,0 +1,386 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.LauncherConstants;
+import frc.robot.common.Clock;
+import frc.robot.common.Profiler;
+
+/**
+ * The superstructure owns the intake, serializer and launcher, and is the only
+ * thing that drives them. Commands ask it for a goal, and it works out what
+ * each mechanism should be doing on every loop, so that the mechanisms never
+ * fight over the belt, and balls are only taken in while there is room for
+ * them.
+ */
+public class SuperstructureSubsystem extends Profiler.ProfiledSubsystem {
+    /**
+     * The things that the superstructure can be asked to do.
+     */
+    public static enum Goal {
+        /* Hold the balls where they are, indexing any that came in. */
+        IDLE,
+
+        /* Take in balls until the serializer is full. */
+        INTAKE,
+
+        /* Launch every ball in the serializer. */
+        LAUNCH,
+
+        /* Run the intake backwards, holding the balls in the serializer where they are. */
+        EJECT,
+
+        /* Run every ball in the serializer back out through the intake. */
+        EMPTY
+    }
+
+    /**
+     * The states that the superstructure moves through to reach its goal.
+     */
+    public static enum State {
+        /* Nothing is moving, except for the belt while it indexes. */
+        IDLE,
+
+        /* The intake is taking in balls, and the belt is indexing them. */
+        INTAKING,
+
+        /* The intake is running backwards, and the belt is indexing. */
+        EJECTING,
+
+        /* The intake and belt are running backwards. */
+        EMPTYING,
+
+        /* The flywheel is getting up to speed, with the first ball held back. */
+        SPINNING_UP,
+
+        /* The next ball is being fed into the flywheel. */
+        FEEDING,
+
+        /* The flywheel is getting back up to speed after a shot. */
+        RECOVERING
+    }
+
+    /**
+     * CycleTimer measures the time between repeated events, such as balls coming
+     * in or going out, and publishes the last and mean time to the SmartDashboard.
+     */
+    public static class CycleTimer {
+        /* The SmartDashboard keys that the times are published under. */
+        private final String lastKey, meanKey;
+
+        /* The time of the last event, or NaN if timing has stopped. */
+        private double lastTime = Double.NaN;
+
+        /* The last time between events, and the sum and count of all of them. */
+        private double last, total;
+        private int count;
+
+        /**
+         * Initializes a new CycleTimer.
+         *
+         * @param name the name that the times are published under
+         */
+        public CycleTimer(String name) {
+            this.lastKey = "Superstructure/" + name + "/last";
+            this.meanKey = "Superstructure/" + name + "/mean";
+        }
+
+        /**
+         * Starts timing from the given time, without counting a cycle.
+         *
+         * @param timestamp the time to start from, in seconds
+         */
+        public void start(double timestamp) {
+            this.lastTime = timestamp;
+        }
+
+        /**
+         * Marks an event, counting the time since the last one as a cycle if timing
+         * had started.
+         *
+         * @param timestamp the time of the event, in seconds
+         */
+        public void mark(double timestamp) {
+            if (!Double.isNaN(this.lastTime)) {
+                this.last = timestamp - this.lastTime;
+                this.total += this.last;
+                this.count++;
+
+                SmartDashboard.putNumber(this.lastKey, this.last);
+                SmartDashboard.putNumber(this.meanKey, this.getMean());
+            }
+
+            this.lastTime = timestamp;
+        }
+
+        /**
+         * Stops timing, so that the time until the next event isn't counted.
+         */
+        public void stop() {
+            this.lastTime = Double.NaN;
+        }
+
+        /**
+         * Gets the last time between events.
+         *
+         * @return the last cycle time, in seconds
+         */
+        public double getLast() {
+            return this.last;
+        }
+
+        /**
+         * Gets the mean time between events.
+         *
+         * @return the mean cycle time, in seconds, or 0 if none have been counted
+         */
+        public double getMean() {
+            return this.count == 0 ? 0.0 : this.total / this.count;
+        }
+    }
+
+    /* The mechanisms that the superstructure drives. */
+    private final IntakeSubsystem intake;
+    private final SerializerSubsystem serializer;
+    private final LauncherSubsystem launcher;
+
+    /* Counts each ball as it leaves the launcher. */
+    private final LauncherSubsystem.ShotDetector shots;
+
+    /* What the superstructure has been asked to do. */
+    private Goal goal = Goal.IDLE;
+
+    /* Whether the flywheel should be kept spinning while not launching. */
+    private boolean prespin;
+
+    /* What the superstructure is doing, and the time at which it started. */
+    private State state = State.IDLE;
+    private double stateStartTime;
+
+    /* The number of balls in the serializer as of the last loop. */
+    private int lastBallCount;
+
+    /* The time between balls coming in, spinning up, and balls going out. */
+    private final CycleTimer intakeCycle, spinUpCycle, shotCycle;
+
+    /**
+     * Initializes a new SuperstructureSubsystem. No command should drive the
+     * given subsystems directly from here on.
+     *
+     * @param intake     the intake
+     * @param serializer the serializer
+     * @param launcher   the launcher
+     */
+    public SuperstructureSubsystem(IntakeSubsystem intake, SerializerSubsystem serializer,
+            LauncherSubsystem launcher) {
+        this.intake = intake;
+        this.serializer = serializer;
+        this.launcher = launcher;
+        this.shots = new LauncherSubsystem.ShotDetector();
+
+        this.intakeCycle = new CycleTimer("intake");
+        this.spinUpCycle = new CycleTimer("spinUp");
+        this.shotCycle = new CycleTimer("shot");
+
+        this.lastBallCount = serializer.getTracker().getCount();
+        SmartDashboard.putString("Superstructure/state", this.state.name());
+    }
+
+    /**
+     * Asks the superstructure to work towards the given goal. Launching finishes
+     * on its own once the serializer is empty, returning to idle.
+     *
+     * @param goal the new goal
+     */
+    public void setGoal(Goal goal) {
+        // A new goal lets the intake try again after giving up on a jam
+        if (goal != this.goal) {
+            this.intake.clearJamFault();
+        }
+
+        this.goal = goal;
+    }
+
+    /**
+     * Gets what the superstructure is working towards.
+     *
+     * @return the current goal
+     */
+    public Goal getGoal() {
+        return this.goal;
+    }
+
+    /**
+     * Gets what the superstructure is doing.
+     *
+     * @return the current state
+     */
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * Sets whether the flywheel should be kept at speed while not launching, such
+     * as while the robot lines up a shot.
+     *
+     * @param prespin whether to keep the flywheel spinning
+     */
+    public void setPrespin(boolean prespin) {
+        this.prespin = prespin;
+    }
+
+    @Override
+    protected void profiledPeriodic() {
+        double now = Clock.now();
+        int balls = this.serializer.getTracker().getCount();
+
+        if (balls > this.lastBallCount && this.state == State.INTAKING) {
+            this.intakeCycle.mark(now);
+        }
+        this.lastBallCount = balls;
+
+        this.transitionTo(this.nextState(now, balls), now);
+        this.drive();
+    }
+
+    /**
+     * Works out what the superstructure should be doing, given its goal and what
+     * it is doing now.
+     */
+    private State nextState(double now, int balls) {
+        switch (this.goal) {
+        case INTAKE:
+            return State.INTAKING;
+        case EJECT:
+            return State.EJECTING;
+        case EMPTY:
+            return State.EMPTYING;
+        case LAUNCH:
+            break;
+        default:
+            return State.IDLE;
+        }
+
+        if (balls == 0) {
+            // Every ball is gone, so there's nothing left to launch
+            this.goal = Goal.IDLE;
+            return State.IDLE;
+        }
+
+        boolean atSpeed = this.launcher.isAtSpeed(LauncherConstants.FLYWHEEL_TOLERANCE_RPM);
+        boolean shot = this.shots.update(now, this.launcher.getVelocity(), this.launcher.getTargetVelocity(),
+                this.serializer.isBallAtLauncher());
+
+        switch (this.state) {
+        case SPINNING_UP:
+        case RECOVERING:
+            return atSpeed ? State.FEEDING : this.state;
+        case FEEDING:
+            // Hold the next ball back until the flywheel has recovered from this one
+            return shot ? State.RECOVERING : State.FEEDING;
+        default:
+            return State.SPINNING_UP;
+        }
+    }
+
+    /**
+     * Moves on to the given state, keeping track of how long each step takes.
+     */
+    private void transitionTo(State next, double now) {
+        if (next == this.state) {
+            return;
+        }
+
+        if (next == State.SPINNING_UP) {
+            this.shots.reset();
+            this.spinUpCycle.start(now);
+            this.shotCycle.start(now);
+        } else if (next == State.FEEDING && this.state == State.SPINNING_UP) {
+            this.spinUpCycle.mark(now);
+        } else if (next == State.RECOVERING) {
+            this.shotCycle.mark(now);
+        } else if (next == State.INTAKING) {
+            this.intakeCycle.start(now);
+        }
+
+        if (this.state == State.INTAKING) {
+            this.intakeCycle.stop();
+        }
+
+        this.state = next;
+        this.stateStartTime = now;
+        SmartDashboard.putString("Superstructure/state", next.name());
+    }
+
+    /**
+     * Drives each of the mechanisms as the current state calls for.
+     */
+    private void drive() {
+        boolean launching = this.state == State.SPINNING_UP || this.state == State.FEEDING
+                || this.state == State.RECOVERING;
+
+        // Only take balls in while there's room for them
+        if (this.state == State.INTAKING) {
+            this.intake.runIntake(this.serializer.canAcceptBall() ? 1.0 : 0.0);
+        } else if (this.state == State.EJECTING || this.state == State.EMPTYING) {
+            this.intake.runIntake(-1.0);
+        } else {
+            this.intake.runIntake(0.0);
+        }
+
+        if (this.state == State.FEEDING) {
+            this.serializer.feed();
+            this.launcher.startRollers();
+        } else {
+            if (this.state == State.EMPTYING) {
+                this.serializer.reverseSerializer();
+            } else {
+                // Indexing never pushes a ball past where it waits to be launched
+                this.serializer.index();
+            }
+            this.launcher.stopRollers();
+        }
+
+        if (launching || (this.prespin && this.state != State.EMPTYING)) {
+            this.launcher.startLauncher();
+        } else {
+            this.launcher.stopLauncher();
+        }
+    }
+
+    /**
+     * Gets how long the superstructure has been in its current state.
+     *
+     * @return the time in the current state, in seconds
+     */
+    public double getTimeInState() {
+        return Clock.now() - this.stateStartTime;
+    }
+
+    /**
+     * Gets the times between balls coming in while intaking.
+     *
+     * @return the intake cycle timer
+     */
+    public CycleTimer getIntakeCycle() {
+        return this.intakeCycle;
+    }
+
+    /**
+     * Gets the times taken to get the flywheel up to speed for a volley.
+     *
+     * @return the spin up timer
+     */
+    public CycleTimer getSpinUpCycle() {
+        return this.spinUpCycle;
+    }
+
+    /**
+     * Gets the times between balls going out while launching. The first is
+     * counted from the start of the volley.
+     *
+     * @return the shot cycle timer
+     */
+    public CycleTimer getShotCycle() {
+        return this.shotCycle;
+    }
+}
@@ -1,11 +1,16 @@
 package frc.robot.subsystems;
 
+import edu.wpi.first.networktables.EntryListenerFlags;
 import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.Preferences;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.common.Clock;
 import frc.robot.common.Patterns;
+import frc.robot.common.Profiler;
+import frc.robot.common.Telemetry;
+import frc.robot.common.Tables;
 import frc.robot.common.Preferences.Group;
 
 /**
@@ -14,7 +19,12 @@ import frc.robot.common.Preferences.Group;
  *
  * @author Dowland Aiello
  */
-public class VisionSubsystem extends SubsystemBase implements Group {
+public class VisionSubsystem extends Profiler.ProfiledSubsystem implements Group {
+    /*
+     * The group that the vision subsystem's preferences are kept in, which can be
+     * used without an instance of the subsystem.
+     */
+    public static final Group PREFERENCES = Group.named("vision");
 
     /**
      * LEDMode represents one of 4 LED modes available to the limelight.
@@ -103,11 +113,7 @@ public class VisionSubsystem extends SubsystemBase implements Group {
          *              configure the limeliight configuration class from
          */
         public LimelightConfiguration applyPreferences(Preferences prefs) {
-            // We'll use an empty vision subsystem in order to configure the preferences
-            VisionSubsystem visionSubsystem = VisionSubsystem.getDefault();
-
-            this.ledMode = LEDMode
-                    .fromString(prefs.getString(visionSubsystem.preferencesKey("ledMode").toString(), "default"));
+            this.ledMode = PREFERENCES.parsedPref("ledMode", "default", LEDMode::fromString).get();
 
             return this;
         }
@@ -124,9 +130,168 @@ public class VisionSubsystem extends SubsystemBase implements Group {
         }
     }
 
+    /**
+     * VisionFrame is an immutable snapshot of the values published by the
+     * limelight for a single camera frame.
+     */
+    public static final class VisionFrame {
+        /* An empty frame, used before the limelight has published anything. */
+        static final VisionFrame EMPTY = new VisionFrame(0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+
+        /* The number of frames received before this one. Used to tell frames apart. */
+        private final long sequence;
+
+        /* The raw values published by the limelight. */
+        private final double tv, tx, ty, ta, tl;
+
+        /* The FPGA time, in seconds, at which the camera captured the frame. */
+        private final double timestamp;
+
+        /* The estimated distance to the target, in meters. */
+        private final double distance;
+
+        /**
+         * Initializes a new VisionFrame with the given values.
+         *
+         * @param sequence  the number of frames received before this one
+         * @param tv        whether or not the limelight has a target (0 or 1)
+         * @param tx        the horizontal offset to the target, in degrees
+         * @param ty        the vertical offset to the target, in degrees
+         * @param ta        the area of the target, as a percentage of the image
+         * @param tl        the pipeline latency of the limelight, in milliseconds
+         * @param timestamp the FPGA time at which the frame was captured, in seconds
+         * @param distance  the estimated distance to the target, in meters
+         */
+        public VisionFrame(long sequence, double tv, double tx, double ty, double ta, double tl, double timestamp,
+                double distance) {
+            this.sequence = sequence;
+            this.tv = tv;
+            this.tx = tx;
+            this.ty = ty;
+            this.ta = ta;
+            this.tl = tl;
+            this.timestamp = timestamp;
+            this.distance = distance;
+        }
+
+        /**
+         * Gets the sequence number of the frame. Two frames with the same sequence
+         * number are the same camera frame.
+         *
+         * @return the number of frames received before this one
+         */
+        public long sequence() {
+            return this.sequence;
+        }
+
+        /**
+         * Whether or not the limelight had a vision target in this frame.
+         *
+         * @return whether or not a target is present
+         */
+        public boolean hasTarget() {
+            return this.tv > 0;
+        }
+
+        /**
+         * Gets the volume variable from the frame.
+         *
+         * @return whether or not the limelight has a target (0 or 1)
+         */
+        public double tv() {
+            return this.tv;
+        }
+
+        /**
+         * Gets the x offset from the frame.
+         *
+         * @return the offset of the crosshair from the target region
+         */
+        public double tx() {
+            return this.tx;
+        }
+
+        /**
+         * Gets the y offset from the frame.
+         *
+         * @return the y offset of the crosshair from the target region
+         */
+        public double ty() {
+            return this.ty;
+        }
+
+        /**
+         * Gets the size of the target from the frame.
+         *
+         * @return the size of any target contained inside the bounds of the limelight
+         */
+        public double ta() {
+            return this.ta;
+        }
+
+        /**
+         * Gets the pipeline latency reported by the limelight for the frame.
+         *
+         * @return the pipeline latency, in milliseconds
+         */
+        public double latency() {
+            return this.tl;
+        }
+
+        /**
+         * Gets the FPGA time at which the frame was captured by the camera.
+         *
+         * @return the capture time of the frame, in seconds
+         */
+        public double timestamp() {
+            return this.timestamp;
+        }
+
+        /**
+         * Gets the distance to the target, estimated from the target's vertical
+         * offset in the frame.
+         *
+         * @return the horizontal distance from the camera to the target, in meters
+         */
+        public double distance() {
+            return this.distance;
+        }
+    }
+
+    /*
+     * The horizontal distance to the target for each vertical offset (ty) that the
+     * camera can see, so that estimating distance doesn't need any trigonometry.
+     */
+    private static final Tables.Uniform DISTANCE_BY_TY = new Tables.Uniform(
+            -Constants.VisionConstants.DEFAULT_BOUNDS[1], Constants.VisionConstants.DEFAULT_BOUNDS[1],
+            Constants.VisionConstants.DISTANCE_TABLE_STEP_DEGREES, VisionSubsystem::calculateDistance);
+
     /* A NetworkTables tabel for the limelight. */
     private NetworkTable limelightTable;
 
+    /* Each of the limelight entries that make up a frame. */
+    private final NetworkTableEntry tvEntry, txEntry, tyEntry, taEntry, tlEntry;
+
+    /*
+     * The most recent frame received from the limelight. Replaced as a whole by the
+     * NetworkTables listener, so readers always see a consistent frame.
+     */
+    private volatile VisionFrame latestFrame;
+
+    /*
+     * The latest time at which any of the limelight's entries had changed, as of
+     * the latest frame. Only used by the NetworkTables listener.
+     */
+    private long latestChange = Long.MIN_VALUE;
+
+    /* The values of each frame, logged as of when the frame was captured. */
+    private final Telemetry.Signal tvSignal = Telemetry.signal("vision/tv");
+    private final Telemetry.Signal txSignal = Telemetry.signal("vision/tx");
+    private final Telemetry.Signal tySignal = Telemetry.signal("vision/ty");
+    private final Telemetry.Signal taSignal = Telemetry.signal("vision/ta");
+    private final Telemetry.Signal latencySignal = Telemetry.signal("vision/latency");
+    private final Telemetry.Signal distanceSignal = Telemetry.signal("vision/distance");
+
     /* A configuration for the LimelightConfiguratioin. */
     private LimelightConfiguration limelightConfiguration;
 
@@ -144,16 +309,93 @@ public class VisionSubsystem extends SubsystemBase implements Group {
 
         // Apply all of our setttings
         this.limelightConfiguration.applySettings(this.limelightTable);
+
+        // Look up each of the entries once, rather than on every read
+        this.tvEntry = this.limelightTable.getEntry("tv");
+        this.txEntry = this.limelightTable.getEntry("tx");
+        this.tyEntry = this.limelightTable.getEntry("ty");
+        this.taEntry = this.limelightTable.getEntry("ta");
+        this.tlEntry = this.limelightTable.getEntry("tl");
+        this.latestFrame = VisionFrame.EMPTY;
+
+        // Assemble a new frame whenever any of the limelight's values changes. Any one
+        // of them, even the latency, may repeat from one frame to the next, in which
+        // case it isn't notified. Local changes are included so that a simulated
+        // limelight can publish them.
+        int flags = EntryListenerFlags.kNew | EntryListenerFlags.kUpdate | EntryListenerFlags.kImmediate
+                | EntryListenerFlags.kLocal;
+        for (NetworkTableEntry entry : new NetworkTableEntry[] { this.tvEntry, this.txEntry, this.tyEntry,
+                this.taEntry, this.tlEntry }) {
+            entry.addListener(notification -> this.onLimelightUpdate(), flags);
+        }
     }
 
     /**
-     * Constructs a new VisionSubsystem without any parameters, and, thus without
-     * any formal fields.
-     * 
-     * @return the initialized, default vision subsystem
+     * Builds a new frame from the limelight's entries. Each of the values that
+     * changed with a frame is notified separately, but they usually have all
+     * arrived by the time the first is handled, so the rest are coalesced into the
+     * same frame by the time of their latest change. Called from the NetworkTables
+     * listener thread.
      */
-    public static VisionSubsystem getDefault() {
-        return new VisionSubsystem(LimelightConfiguration.getDefault());
+    private void onLimelightUpdate() {
+        long change = Math.max(Math.max(Math.max(this.tvEntry.getLastChange(), this.txEntry.getLastChange()),
+                Math.max(this.tyEntry.getLastChange(), this.taEntry.getLastChange())), this.tlEntry.getLastChange());
+
+        // Every value that has changed is already in the latest frame
+        if (change == this.latestChange) {
+            return;
+        }
+        this.latestChange = change;
+
+        double tv = this.tvEntry.getDouble(0.0);
+        double tx = this.txEntry.getDouble(0.0);
+        double ty = this.tyEntry.getDouble(0.0);
+        double ta = this.taEntry.getDouble(0.0);
+        double tl = this.tlEntry.getDouble(0.0);
+
+        VisionFrame previous = this.latestFrame;
+
+        // The frame was captured before the pipeline ran, and before the image was
+        // read off of the sensor
+        double captureTimestamp = Clock.now()
+                - (tl + Constants.VisionConstants.IMAGE_CAPTURE_LATENCY_MS) / 1000.0;
+
+        VisionFrame frame = new VisionFrame(previous.sequence() + 1, tv, tx, ty, ta, tl, captureTimestamp,
+                DISTANCE_BY_TY.get(ty));
+        this.latestFrame = frame;
+
+        this.tvSignal.log(captureTimestamp, tv);
+        this.txSignal.log(captureTimestamp, tx);
+        this.tySignal.log(captureTimestamp, ty);
+        this.taSignal.log(captureTimestamp, ta);
+        this.latencySignal.log(captureTimestamp, tl);
+        this.distanceSignal.log(captureTimestamp, frame.distance());
+    }
+
+    /**
+     * Calculates the horizontal distance from the camera to the target, using the
+     * height of each and the angle between them.
+     *
+     * @param ty the vertical offset of the target from the crosshair, in degrees
+     * @return the distance to the target, in meters
+     */
+    private static double calculateDistance(double ty) {
+        // Targets at or below the horizon would be infinitely far away
+        double angle = Math.max(Constants.VisionConstants.CAMERA_MOUNT_ANGLE_DEGREES + ty,
+                Constants.VisionConstants.MINIMUM_TARGET_ELEVATION_DEGREES);
+
+        return (Constants.VisionConstants.TARGET_HEIGHT_METERS - Constants.VisionConstants.CAMERA_HEIGHT_METERS)
+                / Math.tan(Math.toRadians(angle));
+    }
+
+    /**
+     * Gets the most recent frame received from the limelight. The frame holds
+     * every value that had arrived when it was built, and is never changed after.
+     *
+     * @return the latest frame from the limelight
+     */
+    public VisionFrame getLatestFrame() {
+        return this.latestFrame;
     }
 
     /**
@@ -178,7 +420,7 @@ public class VisionSubsystem extends SubsystemBase implements Group {
      * @return the name of the preferences group
      */
     public String groupName() {
-        return "vision";
+        return PREFERENCES.groupName();
     }
 
     /**
@@ -187,14 +429,14 @@ public class VisionSubsystem extends SubsystemBase implements Group {
      * @return
      */
     public boolean hasTarget() {
-        return this.tv() > 0;
+        return this.latestFrame.hasTarget();
     }
 
     /**
      * Gets the volume variable from the limelight.
      */
     public double tv() {
-        return this.limelightTable.getEntry("tv").getDouble(0.0);
+        return this.latestFrame.tv();
     }
 
     /**
@@ -203,7 +445,7 @@ public class VisionSubsystem extends SubsystemBase implements Group {
      * @return the offset of the crosshair from the target regiion
      */
     public double tx() {
-        return this.limelightTable.getEntry("tx").getDouble(0.0);
+        return this.latestFrame.tx();
     }
 
     /**
@@ -212,7 +454,17 @@ public class VisionSubsystem extends SubsystemBase implements Group {
      * @return the x offset of the crosshair from the target region
      */
     public double ty() {
-        return this.limelightTable.getEntry("ty").getDouble(0.0);
+        return this.latestFrame.ty();
+    }
+
+    /**
+     * Gets the distance to the target, estimated from the limelight's vertical
+     * offset.
+     *
+     * @return the horizontal distance from the camera to the target, in meters
+     */
+    public double getDistanceMeters() {
+        return this.latestFrame.distance();
     }
 
     /**
@@ -221,6 +473,6 @@ public class VisionSubsystem extends SubsystemBase implements Group {
      * @return the size of any target contained inside the bounds of the limelight
      **/
     public double ta() {
-        return this.limelightTable.getEntry("ta").getDouble(0.0);
+        return this.latestFrame.ta();
     }
 }
@@ -0,0 +1,71 @@
+package frc.robot.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ControlLoopTest {
+    @Test
+    public void mailboxReadsZerosUntilPosted() {
+        ControlLoop.Mailbox mailbox = new ControlLoop.Mailbox(2);
+
+        assertFalse(mailbox.hasNew());
+        assertArrayEquals(new double[] { 0.0, 0.0 }, mailbox.take(), 0.0);
+    }
+
+    @Test
+    public void mailboxKeepsOnlyTheLatestPost() {
+        ControlLoop.Mailbox mailbox = new ControlLoop.Mailbox(2);
+
+        mailbox.post(new double[] { 1.0, 2.0 });
+        mailbox.post(new double[] { 3.0, 4.0 });
+        assertTrue(mailbox.hasNew());
+
+        assertArrayEquals(new double[] { 3.0, 4.0 }, mailbox.take(), 0.0);
+        assertFalse(mailbox.hasNew());
+
+        // Taking again without a post gives the same values
+        assertArrayEquals(new double[] { 3.0, 4.0 }, mailbox.take(), 0.0);
+    }
+
+    @Test
+    public void mailboxCopiesThePostedValues() {
+        ControlLoop.Mailbox mailbox = new ControlLoop.Mailbox(1);
+        double[] values = { 1.0 };
+
+        mailbox.post(values);
+        values[0] = 2.0;
+
+        assertEquals(1.0, mailbox.take()[0], 0.0);
+    }
+
+    @Test
+    public void mailboxNeverTearsOrGoesBackwards() throws InterruptedException {
+        ControlLoop.Mailbox mailbox = new ControlLoop.Mailbox(2);
+        int posts = 200000;
+
+        Thread writer = new Thread(() -> {
+            double[] values = new double[2];
+            for (int i = 1; i <= posts; i++) {
+                values[0] = i;
+                values[1] = -i;
+                mailbox.post(values);
+            }
+        });
+        writer.start();
+
+        double last = 0.0;
+        while (last < posts) {
+            double[] values = mailbox.take();
+
+            assertEquals(values[0], -values[1], 0.0);
+            assertTrue(values[0] >= last);
+            last = values[0];
+        }
+
+        writer.join();
+    }
+}
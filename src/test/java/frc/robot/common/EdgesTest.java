@@ -0,0 +1,80 @@
+package frc.robot.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EdgesTest {
+    @Test
+    public void queueReturnsEdgesInOrder() {
+        Edges.Queue queue = new Edges.Queue(4);
+        assertTrue(queue.isEmpty());
+
+        queue.offer(1.0, false);
+        queue.offer(2.0, true);
+
+        assertEquals(1.0, queue.peekTimestamp(), 0.0);
+        assertFalse(queue.peekRising());
+        queue.remove();
+
+        assertEquals(2.0, queue.peekTimestamp(), 0.0);
+        assertTrue(queue.peekRising());
+        queue.remove();
+
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void queueDropsEdgesWhenFull() {
+        Edges.Queue queue = new Edges.Queue(2);
+
+        assertTrue(queue.offer(1.0, true));
+        assertTrue(queue.offer(2.0, false));
+        assertFalse(queue.offer(3.0, true));
+        assertEquals(1, queue.getDropped());
+
+        // A freed slot can be used again, and the oldest edge is still first
+        queue.remove();
+        assertTrue(queue.offer(4.0, true));
+        assertEquals(2.0, queue.peekTimestamp(), 0.0);
+    }
+
+    @Test
+    public void queueWrapsAround() {
+        Edges.Queue queue = new Edges.Queue(2);
+
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i, i % 2 == 0);
+            assertEquals(i, queue.peekTimestamp(), 0.0);
+            assertEquals(i % 2 == 0, queue.peekRising());
+            queue.remove();
+        }
+
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queueNeedsPowerOfTwoCapacity() {
+        new Edges.Queue(3);
+    }
+
+    @Test
+    public void maskReportsEdgesOnEveryInterrupt() {
+        for (int index = 0; index < 8; index++) {
+            int rising = 1 << index;
+            int falling = 1 << (index + 8);
+
+            assertTrue("rising on " + index, Edges.AnalogSensor.isRising(rising));
+            assertFalse("rising on " + index, Edges.AnalogSensor.isFalling(rising));
+
+            assertFalse("falling on " + index, Edges.AnalogSensor.isRising(falling));
+            assertTrue("falling on " + index, Edges.AnalogSensor.isFalling(falling));
+
+            assertTrue("both on " + index, Edges.AnalogSensor.isRising(rising | falling));
+            assertTrue("both on " + index, Edges.AnalogSensor.isFalling(rising | falling));
+        }
+    }
+}
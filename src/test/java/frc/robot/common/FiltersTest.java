@@ -0,0 +1,119 @@
+package frc.robot.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FiltersTest {
+    /* The time between each measurement, as from the robot loop. */
+    private static final double PERIOD = 0.02;
+
+    @Test
+    public void medianTracksTheMiddleOfTheWindow() {
+        Filters.Median median = new Filters.Median(3);
+        assertEquals(0.0, median.get(), 0.0);
+
+        median.push(5.0);
+        median.push(1.0);
+        median.push(3.0);
+        assertEquals(3.0, median.get(), 0.0);
+
+        // The 5 falls out of the window
+        median.push(0.0);
+        assertEquals(1.0, median.get(), 0.0);
+        assertEquals(3, median.size());
+    }
+
+    @Test
+    public void medianTakesTheUpperOfTwoMiddleValues() {
+        Filters.Median median = new Filters.Median(4);
+
+        median.push(1.0);
+        median.push(4.0);
+        assertEquals(4.0, median.get(), 0.0);
+
+        median.push(2.0);
+        median.push(3.0);
+        assertEquals(3.0, median.get(), 0.0);
+    }
+
+    @Test
+    public void modeKeepsThePreviousValueOnATie() {
+        Filters.Mode mode = new Filters.Mode(4);
+
+        mode.push(true);
+        assertTrue(mode.get());
+
+        mode.push(false);
+        assertTrue(mode.get());
+
+        mode.push(false);
+        assertFalse(mode.get());
+    }
+
+    @Test
+    public void alphaBetaSettlesOnAStep() {
+        assertSettles(new Filters.AlphaBeta(0.5, 0.1));
+    }
+
+    @Test
+    public void kalmanSettlesOnAStep() {
+        assertSettles(new Filters.Kalman(0.5, 1.0));
+    }
+
+    @Test
+    public void kalmanTracksARamp() {
+        Filters.Kalman kalman = new Filters.Kalman(0.1, 1.0);
+
+        for (int i = 0; i <= 100; i++) {
+            kalman.update(3.0 * i * PERIOD, i * PERIOD);
+        }
+
+        // Extrapolates along the ramp between measurements
+        assertEquals(3.0, kalman.getRate(), 0.05);
+        assertEquals(3.0 * 2.5, kalman.get(2.5), 0.05);
+    }
+
+    @Test
+    public void estimatorsStartOverWhenReset() {
+        Filters.Estimator[] estimators = { new Filters.Median(5), new Filters.AlphaBeta(0.5, 0.1),
+                new Filters.Kalman(0.5, 1.0) };
+
+        for (Filters.Estimator estimator : estimators) {
+            estimator.update(10.0, 0.0);
+            estimator.update(20.0, PERIOD);
+            estimator.reset();
+            estimator.update(-1.0, 1.0);
+
+            assertEquals(estimator.getClass().getSimpleName(), -1.0, estimator.get(1.0), 1e-9);
+        }
+    }
+
+    @Test
+    public void estimatorTypesAreParsedByName() {
+        assertEquals(Filters.EstimatorType.ALPHA_BETA, Filters.EstimatorType.fromString("alphabeta"));
+        assertEquals(Filters.EstimatorType.KALMAN, Filters.EstimatorType.fromString("Kalman"));
+        assertEquals(Filters.EstimatorType.MEDIAN, Filters.EstimatorType.fromString("unknown"));
+    }
+
+    /**
+     * Checks that an estimator starts at its first measurement, and settles on a
+     * step within two seconds, without running away.
+     */
+    private static void assertSettles(Filters.Estimator estimator) {
+        estimator.update(0.0, 0.0);
+        assertEquals(0.0, estimator.get(0.0), 0.0);
+
+        double peak = 0.0;
+        for (int i = 1; i <= 100; i++) {
+            estimator.update(10.0, i * PERIOD);
+            peak = Math.max(peak, estimator.get(i * PERIOD));
+        }
+
+        assertEquals(10.0, estimator.get(100 * PERIOD), 0.1);
+        assertEquals(0.0, estimator.getRate(), 1.0);
+        assertTrue("overshot to " + peak, peak < 15.0);
+    }
+}
@@ -0,0 +1,58 @@
+package frc.robot.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ProfilerTest {
+    @Test
+    public void bucketsHoldExactlyTheirRange() {
+        for (long value = 0; value < 1L << 20; value = value < 64 ? value + 1 : value + value / 7) {
+            int bucket = Profiler.Histogram.bucket(value);
+
+            assertTrue(value + " above its bucket", value <= Profiler.Histogram.upperBound(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " in the bucket below", value > Profiler.Histogram.upperBound(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void bucketsAreWithinAnEighthOfTheirValues() {
+        for (int shift = 3; shift < 62; shift++) {
+            long value = (1L << shift) + 1;
+            int bucket = Profiler.Histogram.bucket(value);
+            long width = Profiler.Histogram.upperBound(bucket) - Profiler.Histogram.upperBound(bucket - 1);
+
+            assertTrue("bucket for " + value + " is " + width + " wide", width <= value / 8);
+        }
+    }
+
+    @Test
+    public void histogramFindsPercentiles() {
+        Profiler.Histogram histogram = new Profiler.Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500000.0, histogram.getPercentile(50), 500000.0 / 8);
+        assertEquals(990000.0, histogram.getPercentile(99), 990000.0 / 8);
+        assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void histogramStartsOverWhenReset() {
+        Profiler.Histogram histogram = new Profiler.Histogram();
+        histogram.record(100);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
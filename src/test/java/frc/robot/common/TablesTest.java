@@ -0,0 +1,93 @@
+package frc.robot.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TablesTest {
+    @Test
+    public void uniformTableInterpolatesAndClamps() {
+        Tables.Uniform table = new Tables.Uniform(0.0, 10.0, 1.0, x -> x * x);
+
+        assertEquals(0.0, table.get(-5.0), 0.0);
+        assertEquals(100.0, table.get(15.0), 0.0);
+        assertEquals(100.0, table.get(10.0), 0.0);
+        assertEquals(4.0, table.get(2.0), 1e-9);
+        assertEquals(6.5, table.get(2.5), 1e-9);
+        assertEquals(0.0, table.get(Double.NaN), 0.0);
+    }
+
+    @Test
+    public void interpolatingTableClampsAtItsEnds() {
+        Tables.Interpolating table = table();
+
+        assertEquals(3000.0, table.get(0, 0.0), 0.0);
+        assertEquals(3000.0, table.get(0, 1.0), 0.0);
+        assertEquals(5000.0, table.get(0, 5.0), 0.0);
+        assertEquals(5000.0, table.get(0, 9.0), 0.0);
+    }
+
+    @Test
+    public void interpolatingTableInterpolatesBetweenKeys() {
+        Tables.Interpolating table = table();
+
+        assertEquals(3500.0, table.get(0, 2.0), 0.0);
+        assertEquals(3250.0, table.get(0, 1.5), 1e-9);
+        assertEquals(4500.0, table.get(0, 4.0), 1e-9);
+        assertEquals(30.0, table.get(1, 3.5), 1e-9);
+    }
+
+    @Test
+    public void interpolatingTableFindsColumnsByName() {
+        Tables.Interpolating table = table();
+
+        assertEquals(0, table.column("rpm"));
+        assertEquals(1, table.column("hood"));
+        assertEquals(-1, table.column("missing"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void interpolatingTableNeedsIncreasingKeys() {
+        new Tables.Interpolating(new String[] { "rpm" }, new double[] { 1.0, 1.0 },
+                new double[][] { { 1.0, 2.0 } });
+    }
+
+    @Test
+    public void interpolatingTableIsReadFromAFile() throws IOException {
+        File file = File.createTempFile("table", ".csv");
+        try {
+            Files.write(file.toPath(), Arrays.asList("# A test table", "distance, rpm, hood", "", "1.0, 3000, 20",
+                    "3.0, 4000, 40"));
+
+            Tables.Interpolating table = Tables.Interpolating.read(file);
+            assertEquals(3500.0, table.get(table.column("rpm"), 2.0), 1e-9);
+            assertEquals(40.0, table.get(table.column("hood"), 3.0), 0.0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void interpolatingTableRejectsMissingFields() throws IOException {
+        File file = File.createTempFile("table", ".csv");
+        try {
+            Files.write(file.toPath(), Arrays.asList("distance, rpm", "1.0"));
+            Tables.Interpolating.read(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Builds a shot map with rpm and hood columns, keyed by distance.
+     */
+    private static Tables.Interpolating table() {
+        return new Tables.Interpolating(new String[] { "rpm", "hood" }, new double[] { 1.0, 2.0, 3.0, 5.0 },
+                new double[][] { { 3000.0, 3500.0, 4000.0, 5000.0 }, { 20.0, 25.0, 30.0, 30.0 } });
+    }
+}
@@ -0,0 +1,51 @@
+package frc.robot.common;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TimeSeriesTest {
+    @Test
+    public void emptySeriesReadsZero() {
+        TimeSeries series = new TimeSeries(4);
+
+        assertEquals(0.0, series.get(1.0), 0.0);
+        assertEquals(0.0, series.getLatest(), 0.0);
+    }
+
+    @Test
+    public void clampsToTheOldestAndNewestSamples() {
+        TimeSeries series = new TimeSeries(4);
+        series.add(1.0, 10.0);
+        series.add(2.0, 20.0);
+
+        assertEquals(10.0, series.get(0.0), 0.0);
+        assertEquals(10.0, series.get(1.0), 0.0);
+        assertEquals(20.0, series.get(2.0), 0.0);
+        assertEquals(20.0, series.get(3.0), 0.0);
+    }
+
+    @Test
+    public void interpolatesBetweenSamples() {
+        TimeSeries series = new TimeSeries(4);
+        series.add(1.0, 10.0);
+        series.add(2.0, 20.0);
+        series.add(4.0, 0.0);
+
+        assertEquals(15.0, series.get(1.5), 1e-9);
+        assertEquals(10.0, series.get(3.0), 1e-9);
+    }
+
+    @Test
+    public void keepsOnlyTheNewestSamples() {
+        TimeSeries series = new TimeSeries(3);
+        for (int i = 0; i < 10; i++) {
+            series.add(i, i * 10.0);
+        }
+
+        assertEquals(3, series.size());
+        assertEquals(90.0, series.getLatest(), 0.0);
+        assertEquals(70.0, series.get(0.0), 0.0);
+        assertEquals(75.0, series.get(7.5), 1e-9);
+    }
+}
@@ -0,0 +1,96 @@
+package frc.robot.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.wpi.first.wpilibj.geometry.Pose2d;
+import edu.wpi.first.wpilibj.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.trajectory.Trajectory;
+
+public class TrajectoriesTest {
+    /* The cache file being written and read. */
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = new File(File.createTempFile("paths", "").getPath() + ".d", "test.traj");
+    }
+
+    @After
+    public void tearDown() {
+        this.file.delete();
+        this.file.getParentFile().delete();
+    }
+
+    @Test
+    public void trajectoryRoundTripsThroughTheCache() throws IOException {
+        Trajectory trajectory = trajectory();
+        Trajectories.write(this.file, 42L, trajectory);
+
+        Trajectory cached = Trajectories.read(this.file, 42L);
+        assertNotNull(cached);
+        assertEquals(trajectory.getStates().size(), cached.getStates().size());
+
+        for (int i = 0; i < trajectory.getStates().size(); i++) {
+            Trajectory.State expected = trajectory.getStates().get(i);
+            Trajectory.State actual = cached.getStates().get(i);
+
+            assertEquals(expected.timeSeconds, actual.timeSeconds, 0.0);
+            assertEquals(expected.velocityMetersPerSecond, actual.velocityMetersPerSecond, 0.0);
+            assertEquals(expected.accelerationMetersPerSecondSq, actual.accelerationMetersPerSecondSq, 0.0);
+            assertEquals(expected.poseMeters.getTranslation().getX(), actual.poseMeters.getTranslation().getX(), 0.0);
+            assertEquals(expected.poseMeters.getTranslation().getY(), actual.poseMeters.getTranslation().getY(), 0.0);
+            assertEquals(expected.poseMeters.getRotation().getRadians(),
+                    actual.poseMeters.getRotation().getRadians(), 1e-12);
+            assertEquals(expected.curvatureRadPerMeter, actual.curvatureRadPerMeter, 0.0);
+        }
+    }
+
+    @Test
+    public void staleCacheIsIgnored() throws IOException {
+        Trajectories.write(this.file, 42L, trajectory());
+
+        assertNull(Trajectories.read(this.file, 43L));
+    }
+
+    @Test
+    public void truncatedCacheIsIgnored() throws IOException {
+        Trajectories.write(this.file, 42L, trajectory());
+
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        assertNull(Trajectories.read(this.file, 42L));
+    }
+
+    @Test
+    public void missingCacheIsIgnored() throws IOException {
+        assertNull(Trajectories.read(this.file, 42L));
+    }
+
+    /**
+     * Builds a short trajectory along a curve, without generating it.
+     */
+    private static Trajectory trajectory() {
+        List<Trajectory.State> states = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            double t = i * 0.1;
+            states.add(new Trajectory.State(t, 2.0 * t, 2.0, new Pose2d(t * t, 0.5 * t, new Rotation2d(0.3 * t)),
+                    0.25));
+        }
+
+        return new Trajectory(states);
+    }
+}
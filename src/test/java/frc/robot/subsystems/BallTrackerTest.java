@@ -0,0 +1,102 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import frc.robot.Constants.SerializerConstants;
+import frc.robot.common.Edges;
+import frc.robot.subsystems.SerializerSubsystem.BallTracker;
+
+public class BallTrackerTest {
+    /* The edges of the entrance, middle and launcher photoeyes. */
+    private Edges.Queue entrance, middle, launcher;
+
+    @Before
+    public void setUp() {
+        this.entrance = new Edges.Queue(SerializerConstants.SENSOR_EDGE_CAPACITY);
+        this.middle = new Edges.Queue(SerializerConstants.SENSOR_EDGE_CAPACITY);
+        this.launcher = new Edges.Queue(SerializerConstants.SENSOR_EDGE_CAPACITY);
+    }
+
+    @Test
+    public void linesUpInitialBallsBehindTheLauncher() {
+        BallTracker tracker = new BallTracker(this.entrance, this.middle, this.launcher, 3, 0.0);
+        tracker.update(0.0, 0.0, false);
+
+        assertEquals(3, tracker.getCount());
+        assertEquals(SerializerConstants.READY_POSITION, tracker.getPosition(0), 1e-9);
+        assertEquals(SerializerConstants.READY_POSITION - SerializerConstants.BALL_PITCH, tracker.getPosition(1),
+                1e-9);
+        assertEquals(0.0, tracker.getAdvance(), 1e-9);
+    }
+
+    @Test
+    public void placesEnteringBallByTheBeltsTravelAtTheEdge() {
+        BallTracker tracker = new BallTracker(this.entrance, this.middle, this.launcher, 0, 0.0);
+        tracker.update(0.0, 0.0, false);
+
+        // The ball reached the entrance halfway between the two updates
+        this.entrance.offer(0.5, false);
+        tracker.update(1.0, 10.0, false);
+
+        assertEquals(1, tracker.getCount());
+        assertEquals(5.0, tracker.getPosition(0), 1e-9);
+        assertEquals(SerializerConstants.BALL_PITCH - 5.0, tracker.getAdvance(), 1e-9);
+    }
+
+    @Test
+    public void countsBallsLeavingForTheLauncher() {
+        BallTracker tracker = new BallTracker(this.entrance, this.middle, this.launcher, 2, 0.0);
+        tracker.update(0.0, 0.0, false);
+
+        // Only the back of the ball leaving counts
+        this.launcher.offer(0.1, false);
+        this.launcher.offer(0.2, true);
+        tracker.update(1.0, 1.0, false);
+
+        assertEquals(1, tracker.getCount());
+    }
+
+    @Test
+    public void countsBallsReversedOutOfTheEntrance() {
+        BallTracker tracker = new BallTracker(this.entrance, this.middle, this.launcher, 2, 0.0);
+        tracker.update(0.0, 0.0, true);
+
+        this.entrance.offer(0.1, false);
+        this.entrance.offer(0.2, true);
+        tracker.update(1.0, -10.0, true);
+
+        assertEquals(1, tracker.getCount());
+    }
+
+    @Test
+    public void handlesEdgesFromEveryEyeOldestFirst() {
+        BallTracker tracker = new BallTracker(this.entrance, this.middle, this.launcher,
+                SerializerConstants.MAX_BALLS, 0.0);
+        tracker.update(0.0, 0.0, false);
+
+        // A ball left before the next came in, so there was room for it
+        this.entrance.offer(0.3, false);
+        this.launcher.offer(0.2, true);
+        tracker.update(1.0, 1.0, false);
+
+        assertEquals(SerializerConstants.MAX_BALLS, tracker.getCount());
+    }
+
+    @Test
+    public void movesTheNearestBallOntoTheMiddleEye() {
+        BallTracker tracker = new BallTracker(this.entrance, this.middle, this.launcher, 0, 0.0);
+        tracker.update(0.0, 0.0, false);
+
+        this.entrance.offer(0.0, false);
+        tracker.update(1.0, 10.0, false);
+
+        // The ball slipped, reaching the middle eye later than the belt says it should
+        this.middle.offer(1.5, false);
+        tracker.update(2.0, 30.0, false);
+
+        assertEquals(SerializerConstants.MIDDLE_SENSOR_POSITION + 10.0, tracker.getPosition(0), 1e-9);
+    }
+}
@@ -0,0 +1,51 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import frc.robot.Constants.IntakeConstants;
+import frc.robot.subsystems.IntakeSubsystem.JamDetector;
+
+public class JamDetectorTest {
+    /* Readings of an intake that is stalled, and of one turning freely. */
+    private static final double STALLED_CURRENT = IntakeConstants.STALL_CURRENT_AMPS + 1.0;
+    private static final double FREE_VELOCITY = IntakeConstants.STALL_VELOCITY * 10.0;
+
+    @Test
+    public void reportsAJamOnlyAfterStallingLongEnough() {
+        JamDetector detector = new JamDetector();
+
+        assertFalse(detector.update(0.0, 1.0, STALLED_CURRENT, 0.0));
+        assertFalse(detector.update(IntakeConstants.STALL_SECONDS / 2, 1.0, STALLED_CURRENT, 0.0));
+        assertTrue(detector.update(IntakeConstants.STALL_SECONDS, 1.0, STALLED_CURRENT, 0.0));
+    }
+
+    @Test
+    public void startsOverWhenTheIntakeTurns() {
+        JamDetector detector = new JamDetector();
+
+        detector.update(0.0, 1.0, STALLED_CURRENT, 0.0);
+        assertFalse(detector.update(IntakeConstants.STALL_SECONDS / 2, 1.0, STALLED_CURRENT, FREE_VELOCITY));
+        assertFalse(detector.update(IntakeConstants.STALL_SECONDS, 1.0, STALLED_CURRENT, 0.0));
+    }
+
+    @Test
+    public void ignoresCurrentWhileBarelyDriven() {
+        JamDetector detector = new JamDetector();
+
+        double output = IntakeConstants.STALL_MINIMUM_OUTPUT / 2;
+        detector.update(0.0, output, STALLED_CURRENT, 0.0);
+        assertFalse(detector.update(IntakeConstants.STALL_SECONDS * 2, output, STALLED_CURRENT, 0.0));
+    }
+
+    @Test
+    public void forgetsTheStallWhenReset() {
+        JamDetector detector = new JamDetector();
+
+        detector.update(0.0, 1.0, STALLED_CURRENT, 0.0);
+        detector.reset();
+        assertFalse(detector.update(IntakeConstants.STALL_SECONDS, 1.0, STALLED_CURRENT, 0.0));
+    }
+}
@@ -0,0 +1,58 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import frc.robot.Constants.LauncherConstants;
+import frc.robot.subsystems.LauncherSubsystem.ShotDetector;
+
+public class ShotDetectorTest {
+    /* The flywheel's setpoint, and a speed that has dipped well below it. */
+    private static final double TARGET = 4000.0;
+    private static final double DIPPED = TARGET - 2 * LauncherConstants.SHOT_DIP_RPM;
+
+    @Test
+    public void countsADipOnlyOnceAtSpeed() {
+        ShotDetector detector = new ShotDetector();
+
+        // Still spinning up, so a low speed isn't a shot
+        assertFalse(detector.update(0.0, DIPPED, TARGET, false));
+        assertFalse(detector.update(1.0, TARGET, TARGET, false));
+        assertTrue(detector.update(2.0, DIPPED, TARGET, false));
+
+        // Disarmed until the flywheel recovers
+        assertFalse(detector.update(3.0, DIPPED, TARGET, false));
+    }
+
+    @Test
+    public void countsABallLeavingTheEye() {
+        ShotDetector detector = new ShotDetector();
+
+        assertFalse(detector.update(0.0, DIPPED, TARGET, true));
+        assertTrue(detector.update(1.0, DIPPED, TARGET, false));
+    }
+
+    @Test
+    public void countsEachShotOnce() {
+        ShotDetector detector = new ShotDetector();
+        detector.update(0.0, TARGET, TARGET, true);
+
+        // The dip and the ball leaving are seen at nearly the same time
+        assertTrue(detector.update(1.0, DIPPED, TARGET, true));
+        assertFalse(detector.update(1.0 + LauncherConstants.SHOT_DEDUPE_SECONDS / 2, DIPPED, TARGET, false));
+    }
+
+    @Test
+    public void ignoresTheSetpointMoving() {
+        ShotDetector detector = new ShotDetector();
+        detector.update(0.0, TARGET, TARGET, false);
+
+        // A higher setpoint leaves the flywheel well below it, without a ball
+        double raised = TARGET + 2 * LauncherConstants.SHOT_DIP_RPM;
+        assertFalse(detector.update(1.0, TARGET, raised, false));
+        assertFalse(detector.update(2.0, raised, raised, false));
+        assertTrue(detector.update(3.0, raised - 2 * LauncherConstants.SHOT_DIP_RPM, raised, false));
+    }
+}